@@ -0,0 +1,52 @@
+package info.kite.lost.android.photogallery;
+
+import android.support.v7.util.DiffUtil;
+
+import java.util.List;
+
+import info.kite.lost.android.photogallery.model.GalleryItem;
+
+/**
+ * 比较新旧两个item列表，id相同视为同一张照片，url、标题和尺寸都相同视为内容未变
+ * <p>
+ * Created on 2026/10/18.
+ */
+
+public class GalleryDiffCallback extends DiffUtil.Callback {
+    private final List<GalleryItem> mOldItems;
+    private final List<GalleryItem> mNewItems;
+
+    public GalleryDiffCallback(List<GalleryItem> oldItems, List<GalleryItem> newItems) {
+        mOldItems = oldItems;
+        mNewItems = newItems;
+    }
+
+    @Override
+    public int getOldListSize() {
+        return mOldItems.size();
+    }
+
+    @Override
+    public int getNewListSize() {
+        return mNewItems.size();
+    }
+
+    @Override
+    public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
+        return equals(mOldItems.get(oldItemPosition).getId(), mNewItems.get(newItemPosition).getId());
+    }
+
+    @Override
+    public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+        GalleryItem oldItem = mOldItems.get(oldItemPosition);
+        GalleryItem newItem = mNewItems.get(newItemPosition);
+        return equals(oldItem.getUrl(), newItem.getUrl())
+                && equals(oldItem.getCaption(), newItem.getCaption())
+                && oldItem.getWidth() == newItem.getWidth()
+                && oldItem.getHeight() == newItem.getHeight();
+    }
+
+    private static boolean equals(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+}
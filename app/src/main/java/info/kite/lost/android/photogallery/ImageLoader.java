@@ -0,0 +1,374 @@
+package info.kite.lost.android.photogallery;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.graphics.Bitmap;
+import android.graphics.drawable.BitmapDrawable;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+import android.os.Handler;
+import android.os.Looper;
+import android.telephony.TelephonyManager;
+import android.util.Log;
+import android.util.SparseIntArray;
+import android.view.View;
+import android.widget.ImageView;
+
+import java.io.PrintWriter;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import info.kite.lost.android.photogallery.cache.ImageCache;
+import info.kite.lost.android.photogallery.model.GalleryItem;
+import info.kite.lost.android.photogallery.model.ImageTier;
+import info.kite.lost.android.photogallery.net.Deadline;
+import info.kite.lost.android.photogallery.net.ThumbnailDownloader;
+import info.kite.lost.android.photogallery.storage.GalleryStore;
+
+/**
+ * 进程级的缩略图加载器，所有画廊界面与后台轮询共用同一套线程池、进行中的请求和缓存
+ * 离开并重新打开画廊时，正在进行的下载与已经解码的图片都还在
+ * <p>
+ * 加载的目标是ImageView：view 从窗口分离时自动释放它的请求，重新附着且尚未显示时自动恢复
+ * view 显示的bitmap 在内存缓存中登记引用，取消或换成别的图片时释放，之后才可能被解码复用
+ * fragment 不再需要在生命周期回调中清空队列或终止线程
+ * <p>
+ * 网格的档位按单元格宽度与网络类型选择；目标档位不在内存中时先加载最小的一档作为预览，清晰的一档到达后替换
+ * <p>
+ * 注册了系统的内存回调，按压力等级缩减内存缓存与复用池并暂停预取，dumpsys 中可以看到各等级的次数与释放的字节数
+ * <p/>
+ * Created on 2026/10/18.
+ */
+
+public class ImageLoader implements ComponentCallbacks2 {
+    private static final String TAG = "ImageLoader";
+    // 收到内存回调后暂停预取的时长
+    private static final long PREFETCH_PAUSE_MILLIS = TimeUnit.SECONDS.toMillis(30);
+    // 同步加载的总时限，后台轮询不能因为一张图片拖住整个任务
+    private static final long BLOCKING_DEADLINE_MILLIS = TimeUnit.SECONDS.toMillis(10);
+
+    private static ImageLoader sImageLoader;
+
+    private final Context mContext;
+    private final ThumbnailDownloader<Target> mThumbnailDownloader;
+    // 网格单元格宽度与当前网络类型，决定加载哪个档位
+    private int mTargetWidth;
+    private ImageTier.Network mNetwork = ImageTier.Network.METERED;
+    // 各压力等级的回调次数与累计释放的字节数，只在UI线程访问
+    private final SparseIntArray mTrimCounts = new SparseIntArray();
+    private long mTrimmedBytes;
+
+    public static synchronized ImageLoader get(Context context) {
+        if (sImageLoader == null) {
+            sImageLoader = new ImageLoader(context.getApplicationContext());
+        }
+        return sImageLoader;
+    }
+
+    private ImageLoader(Context context) {
+        mContext = context;
+        mThumbnailDownloader = new ThumbnailDownloader<>(new Handler(Looper.getMainLooper()),
+                new ImageCache(context));
+        mThumbnailDownloader.setThumbnailDownloadListener(
+                new ThumbnailDownloader.ThumbnailDownloadListener<Target>() {
+                    @Override
+                    public void onThumbnailDownloaded(Target target, Bitmap bitmap) {
+                        if (target.mPreview) {
+                            // 清晰的一档已经显示时预览作废
+                            if (target.mRequest.mDelivered) {
+                                getImageCache().releaseBitmap(bitmap);
+                                return;
+                            }
+                        } else {
+                            target.mRequest.mDelivered = true;
+                            mThumbnailDownloader.queueThumbnail(target.mRequest.mPreviewTarget, null);
+                        }
+                        show(target.mRequest, bitmap);
+                    }
+                });
+        final Context appContext = context;
+        mThumbnailDownloader.setColorListener(new ThumbnailDownloader.ColorListener() {
+            @Override
+            public void onColorExtracted(String url, int color) {
+                // 在工作线程中打开和写入数据库，下次显示同一页时单元格先以这个颜色占位
+                GalleryStore.get(appContext).putColor(url, color);
+            }
+        });
+        context.registerComponentCallbacks(this);
+    }
+
+    /**
+     * view 上当前的请求，分离时保留url，重新附着时据此恢复
+     * 一个view 有两个下载目标：清晰的一档与预览，两者互不取代
+     */
+    private static class Request {
+        final ImageView mView;
+        final Target mTarget = new Target(this, false);
+        final Target mPreviewTarget = new Target(this, true);
+        String mUrl;
+        String mPreviewUrl;
+        boolean mDelivered;
+        // 当前显示并登记了引用的bitmap
+        Bitmap mShown;
+
+        Request(ImageView view) {
+            mView = view;
+        }
+    }
+
+    /**
+     * 交给{@link ThumbnailDownloader} 的identity
+     */
+    private static class Target {
+        final Request mRequest;
+        final boolean mPreview;
+
+        Target(Request request, boolean preview) {
+            mRequest = request;
+            mPreview = preview;
+        }
+    }
+
+    /**
+     * 为view 加载url 对应的缩略图，取代它之前的请求，只在UI线程调用
+     * 内存缓存命中时在返回前就已经设置好图片
+     *
+     * @param view 目标
+     * @param url  照片url
+     */
+    public void load(ImageView view, String url) {
+        load(view, url, null);
+    }
+
+    /**
+     * 按当前单元格宽度与网络类型选择档位加载，目标档位不在内存中时先显示最小的一档
+     *
+     * @param view 目标
+     * @param item 照片
+     */
+    public void load(ImageView view, GalleryItem item) {
+        String url = urlFor(item);
+        String previewUrl = item.getTierUrl(ImageTier.TINY);
+        load(view, url, url.equals(previewUrl) ? null : previewUrl);
+    }
+
+    private void load(ImageView view, String url, String previewUrl) {
+        Request request = (Request) view.getTag(R.id.image_loader_request);
+        if (request == null) {
+            request = new Request(view);
+            view.setTag(R.id.image_loader_request, request);
+            view.addOnAttachStateChangeListener(mAttachListener);
+        }
+        request.mUrl = url;
+        request.mPreviewUrl = previewUrl;
+        request.mDelivered = false;
+        queue(request);
+    }
+
+    /**
+     * 先提交清晰的一档再提交预览，网络线程池后进先出，预览先被处理
+     */
+    private void queue(Request request) {
+        mThumbnailDownloader.queueThumbnail(request.mTarget, request.mUrl);
+        // 内存命中时已经同步显示，不再需要预览
+        mThumbnailDownloader.queueThumbnail(request.mPreviewTarget,
+                request.mDelivered ? null : request.mPreviewUrl);
+    }
+
+    /**
+     * 取消view 的请求，例如holder 被回收时
+     * 同时清除它显示的图片，回收池中的holder 不再让bitmap 一直可达
+     */
+    public void cancel(ImageView view) {
+        Request request = (Request) view.getTag(R.id.image_loader_request);
+        if (request != null) {
+            request.mUrl = null;
+            release(request);
+            show(request, null);
+        } else {
+            view.setImageDrawable(null);
+        }
+    }
+
+    /**
+     * 替换view 的图片，之后才释放之前的，释放后它才可能进入复用池
+     *
+     * @param bitmap 已由{@link ThumbnailDownloader} 登记了引用，由request 接管直到被替换
+     */
+    private void show(Request request, Bitmap bitmap) {
+        ImageCache imageCache = mThumbnailDownloader.getImageCache();
+        ImageView view = request.mView;
+        if (bitmap != null) {
+            view.setImageDrawable(new BitmapDrawable(view.getResources(), bitmap));
+        } else {
+            view.setImageDrawable(null);
+        }
+        if (request.mShown != null) {
+            imageCache.releaseBitmap(request.mShown);
+        }
+        request.mShown = bitmap;
+    }
+
+    private void release(Request request) {
+        mThumbnailDownloader.queueThumbnail(request.mTarget, null);
+        mThumbnailDownloader.queueThumbnail(request.mPreviewTarget, null);
+    }
+
+    private final View.OnAttachStateChangeListener mAttachListener =
+            new View.OnAttachStateChangeListener() {
+                @Override
+                public void onViewDetachedFromWindow(View v) {
+                    // 只释放目标，url 留着，RecyclerView 缓存的view 可能不经重新绑定就附着回来
+                    release((Request) v.getTag(R.id.image_loader_request));
+                }
+
+                @Override
+                public void onViewAttachedToWindow(View v) {
+                    Request request = (Request) v.getTag(R.id.image_loader_request);
+                    if (request != null && request.mUrl != null && !request.mDelivered) {
+                        queue(request);
+                    }
+                }
+            };
+
+    /**
+     * @return 网格当前应加载的档位的url
+     */
+    public String urlFor(GalleryItem item) {
+        return item.getUrl(ImageTier.forWidth(mTargetWidth, mNetwork));
+    }
+
+    /**
+     * 重新判断当前的网络类型，网络可能在后台期间改变，通常在onResume 中调用
+     *
+     * @return 当前网络类型
+     */
+    public ImageTier.Network refreshNetwork() {
+        ConnectivityManager cm = (ConnectivityManager) mContext
+                .getSystemService(Context.CONNECTIVITY_SERVICE);
+        NetworkInfo info = cm.getActiveNetworkInfo();
+        if (info != null && info.getType() == ConnectivityManager.TYPE_MOBILE
+                && isSlowSubtype(info.getSubtype())) {
+            mNetwork = ImageTier.Network.SLOW;
+        } else if (cm.isActiveNetworkMetered()) {
+            mNetwork = ImageTier.Network.METERED;
+        } else {
+            mNetwork = ImageTier.Network.UNMETERED;
+        }
+        // 对冲以额外的流量换取更短的长尾延迟
+        mThumbnailDownloader.setHedging(mNetwork == ImageTier.Network.UNMETERED);
+        return mNetwork;
+    }
+
+    private static boolean isSlowSubtype(int subtype) {
+        switch (subtype) {
+            case TelephonyManager.NETWORK_TYPE_GPRS:
+            case TelephonyManager.NETWORK_TYPE_EDGE:
+            case TelephonyManager.NETWORK_TYPE_CDMA:
+            case TelephonyManager.NETWORK_TYPE_1xRTT:
+            case TelephonyManager.NETWORK_TYPE_IDEN:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * 在工作线程中同步取得一张图片，依次查询内存、磁盘和网络，下载的文件进入磁盘缓存
+     *
+     * @param url    照片url
+     * @param width  解码的目标宽度，不依赖画廊界面设置的网格尺寸
+     * @param height 解码的目标高度
+     * @return bitmap，失败或超时时为null；用完后调用{@link ImageCache#releaseBitmap(Bitmap)}
+     * @see ThumbnailDownloader#getBitmapBlocking(String, int, int, Deadline)
+     */
+    public Bitmap loadBlocking(String url, int width, int height) {
+        return mThumbnailDownloader.getBitmapBlocking(url, width, height,
+                Deadline.after(BLOCKING_DEADLINE_MILLIS));
+    }
+
+    /**
+     * @see ThumbnailDownloader#setTargetSize(int, int)
+     */
+    public void setTargetSize(int width, int height) {
+        mTargetWidth = width;
+        mThumbnailDownloader.setTargetSize(width, height);
+    }
+
+    /**
+     * @see ThumbnailDownloader#setPrefetchBudget(long)
+     */
+    public void setPrefetchBudget(long bytes) {
+        mThumbnailDownloader.setPrefetchBudget(bytes);
+    }
+
+    /**
+     * @see ThumbnailDownloader#prefetch(java.util.List)
+     */
+    public void prefetch(List<String> urls) {
+        mThumbnailDownloader.prefetch(urls);
+    }
+
+    public ImageCache getImageCache() {
+        return mThumbnailDownloader.getImageCache();
+    }
+
+    /**
+     * 系统在内存紧张时回调，运行在UI线程
+     */
+    @Override
+    public void onTrimMemory(int level) {
+        long released = mThumbnailDownloader.getImageCache().trimMemory(level);
+        if (level != TRIM_MEMORY_UI_HIDDEN) {
+            // 界面只是不可见时内存并不紧张，其余等级下预取的图片多半会立即被淘汰
+            mThumbnailDownloader.pausePrefetch(PREFETCH_PAUSE_MILLIS);
+        }
+        mTrimCounts.put(level, mTrimCounts.get(level) + 1);
+        mTrimmedBytes += released;
+        Log.i(TAG, "onTrimMemory: " + levelName(level) + ", released " + released + " bytes");
+    }
+
+    /**
+     * API 14 以前没有分级回调，等同于最高等级
+     */
+    @Override
+    public void onLowMemory() {
+        onTrimMemory(TRIM_MEMORY_COMPLETE);
+    }
+
+    @Override
+    public void onConfigurationChanged(Configuration newConfig) {
+    }
+
+    private static String levelName(int level) {
+        switch (level) {
+            case TRIM_MEMORY_RUNNING_MODERATE:
+                return "RUNNING_MODERATE";
+            case TRIM_MEMORY_RUNNING_LOW:
+                return "RUNNING_LOW";
+            case TRIM_MEMORY_RUNNING_CRITICAL:
+                return "RUNNING_CRITICAL";
+            case TRIM_MEMORY_UI_HIDDEN:
+                return "UI_HIDDEN";
+            case TRIM_MEMORY_BACKGROUND:
+                return "BACKGROUND";
+            case TRIM_MEMORY_MODERATE:
+                return "MODERATE";
+            case TRIM_MEMORY_COMPLETE:
+                return "COMPLETE";
+            default:
+                return String.valueOf(level);
+        }
+    }
+
+    public void dump(String prefix, PrintWriter writer) {
+        mThumbnailDownloader.dump(prefix, writer);
+        writer.print(prefix);
+        writer.print("trim memory:");
+        for (int i = 0; i < mTrimCounts.size(); i++) {
+            writer.print(" " + levelName(mTrimCounts.keyAt(i)) + "=" + mTrimCounts.valueAt(i));
+        }
+        writer.println(" released=" + mTrimmedBytes + " bytes");
+    }
+}
@@ -0,0 +1,35 @@
+package info.kite.lost.android.photogallery;
+
+import android.content.Context;
+import android.content.Intent;
+import android.support.v4.app.Fragment;
+
+import info.kite.lost.android.photogallery.model.GalleryItem;
+import info.kite.lost.android.photogallery.model.ImageTier;
+
+/**
+ * 单张照片的全屏查看
+ * Created on 2026/10/18.
+ */
+
+public class PhotoDetailActivity extends SingleFragmentActivity {
+    private static final String EXTRA_PHOTO_ID = "info.kite.lost.android.photogallery.photo_id";
+    private static final String EXTRA_PHOTO_URL = "info.kite.lost.android.photogallery.photo_url";
+    private static final String EXTRA_ORIGINAL_URL = "info.kite.lost.android.photogallery.original_url";
+
+    public static Intent newIntent(Context context, GalleryItem item) {
+        Intent intent = new Intent(context, PhotoDetailActivity.class);
+        intent.putExtra(EXTRA_PHOTO_ID, item.getId());
+        // 预览用网格正在显示的那一档，多半还在内存中
+        intent.putExtra(EXTRA_PHOTO_URL, ImageLoader.get(context).urlFor(item));
+        intent.putExtra(EXTRA_ORIGINAL_URL, item.getTierUrl(ImageTier.LARGE));
+        return intent;
+    }
+
+    @Override
+    protected Fragment createFragment() {
+        return PhotoDetailFragment.newInstance(getIntent().getStringExtra(EXTRA_PHOTO_ID),
+                getIntent().getStringExtra(EXTRA_PHOTO_URL),
+                getIntent().getStringExtra(EXTRA_ORIGINAL_URL));
+    }
+}
@@ -0,0 +1,250 @@
+package info.kite.lost.android.photogallery;
+
+import android.graphics.Bitmap;
+import android.os.AsyncTask;
+import android.os.Bundle;
+import android.os.CancellationSignal;
+import android.os.OperationCanceledException;
+import android.support.v4.app.Fragment;
+import android.util.DisplayMetrics;
+import android.util.Log;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.ProgressBar;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+
+import info.kite.lost.android.photogallery.model.GalleryItem;
+import info.kite.lost.android.photogallery.net.PhotoFetcher;
+import info.kite.lost.android.photogallery.tile.TileDecoder;
+import info.kite.lost.android.photogallery.tile.TiledImageView;
+
+/**
+ * 全屏查看一张照片
+ * 先用缓存中的缩略图作为预览，同时把大图下载到文件，之后只按块解码可见的部分
+ * 预览在内存缓存中登记了引用，显示期间不会被淘汰进复用池、被其它解码覆盖
+ * <p/>
+ * Created on 2026/10/18.
+ */
+
+public class PhotoDetailFragment extends Fragment {
+    private static final String TAG = "PhotoDetailFragment";
+    private static final String ARG_PHOTO_ID = "photo_id";
+    private static final String ARG_PHOTO_URL = "photo_url";
+    private static final String ARG_ORIGINAL_URL = "original_url";
+    // 大图保存在缓存目录下，只保留最近查看的几张
+    private static final String ORIGINALS_DIR = "originals";
+    private static final int MAX_ORIGINALS = 3;
+    // 块缓存容纳约四屏的像素（RGB_565），覆盖当前与相邻采样率的块
+    private static final int TILE_CACHE_SCREENS = 4;
+    private static final int TILE_CACHE_HEAP_FRACTION = 8;
+    // 内存中没有预览时，按屏幕尺寸的这个比例解码，原图就绪前拉伸显示
+    private static final int PREVIEW_SCREEN_FRACTION = 2;
+
+    private String mPhotoId;
+    private String mPhotoUrl;
+    // 列表已经带回最大一档的地址时不必再单独请求照片信息
+    private String mOriginalUrl;
+    // 已登记引用，onDestroy() 中释放
+    private Bitmap mPreview;
+    // fragment 被保留，屏幕旋转后解码器与已解码的块继续有效
+    private TileDecoder mTileDecoder;
+    private LoadOriginalTask mLoadTask;
+
+    private TiledImageView mTiledImageView;
+    private ProgressBar mProgressBar;
+
+    public static PhotoDetailFragment newInstance(String photoId, String photoUrl,
+                                                  String originalUrl) {
+        Bundle args = new Bundle();
+        args.putString(ARG_PHOTO_ID, photoId);
+        args.putString(ARG_PHOTO_URL, photoUrl);
+        args.putString(ARG_ORIGINAL_URL, originalUrl);
+        PhotoDetailFragment fragment = new PhotoDetailFragment();
+        fragment.setArguments(args);
+        return fragment;
+    }
+
+    @Override
+    public void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setRetainInstance(true);
+        mPhotoId = getArguments().getString(ARG_PHOTO_ID);
+        mPhotoUrl = getArguments().getString(ARG_PHOTO_URL);
+        mOriginalUrl = getArguments().getString(ARG_ORIGINAL_URL);
+        ImageLoader imageLoader = ImageLoader.get(getActivity());
+        // 从画廊点进来时缩略图多半还在内存中，可以立即显示
+        mPreview = imageLoader.getImageCache().acquireBitmapFromMemory(mPhotoUrl);
+
+        DisplayMetrics metrics = getResources().getDisplayMetrics();
+        int tileCacheBytes = (int) Math.min(
+                (long) metrics.widthPixels * metrics.heightPixels * 2 * TILE_CACHE_SCREENS,
+                Runtime.getRuntime().maxMemory() / TILE_CACHE_HEAP_FRACTION);
+        mLoadTask = new LoadOriginalTask(imageLoader,
+                new File(getActivity().getCacheDir(), ORIGINALS_DIR), tileCacheBytes,
+                metrics.widthPixels / PREVIEW_SCREEN_FRACTION,
+                metrics.heightPixels / PREVIEW_SCREEN_FRACTION);
+        mLoadTask.execute();
+    }
+
+    @Override
+    public View onCreateView(LayoutInflater inflater, ViewGroup container,
+                             Bundle savedInstanceState) {
+        View v = inflater.inflate(R.layout.fragment_photo_detail, container, false);
+        mTiledImageView = (TiledImageView) v.findViewById(R.id.tiled_image_view_fragment_photo_detail);
+        mProgressBar = (ProgressBar) v.findViewById(R.id.progress_bar_fragment_photo_detail);
+        mTiledImageView.setPreview(mPreview);
+        mTiledImageView.setTileDecoder(mTileDecoder);
+        mProgressBar.setVisibility(mTileDecoder == null ? View.VISIBLE : View.GONE);
+        return v;
+    }
+
+    @Override
+    public void onDestroyView() {
+        super.onDestroyView();
+        // 旧的view 不再接收解码完成的回调
+        mTiledImageView.setTileDecoder(null);
+        mTiledImageView = null;
+        mProgressBar = null;
+    }
+
+    @Override
+    public void onDestroy() {
+        super.onDestroy();
+        mLoadTask.cancelLoad();
+        if (mTileDecoder != null) {
+            mTileDecoder.recycle();
+        }
+        if (mPreview != null) {
+            ImageLoader.get(getActivity()).getImageCache().releaseBitmap(mPreview);
+            mPreview = null;
+        }
+    }
+
+    /**
+     * 按最后使用时间只保留最近的几张大图
+     */
+    private static void trimOriginals(File dir) {
+        File[] files = dir.listFiles();
+        if (files == null || files.length <= MAX_ORIGINALS) {
+            return;
+        }
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File lhs, File rhs) {
+                // 新的在前
+                long diff = rhs.lastModified() - lhs.lastModified();
+                return diff < 0 ? -1 : (diff > 0 ? 1 : 0);
+            }
+        });
+        for (int i = MAX_ORIGINALS; i < files.length; i++) {
+            files[i].delete();
+        }
+    }
+
+    /**
+     * 依次取得预览（缓存中没有时）、大图地址和大图文件，最后打开分块解码器
+     */
+    private class LoadOriginalTask extends AsyncTask<Void, Bitmap, TileDecoder> {
+        private final CancellationSignal mSignal = new CancellationSignal();
+        private final ImageLoader mImageLoader;
+        private final File mDir;
+        private final int mTileCacheBytes;
+        private final int mPreviewWidth;
+        private final int mPreviewHeight;
+
+        LoadOriginalTask(ImageLoader imageLoader, File dir, int tileCacheBytes, int previewWidth,
+                         int previewHeight) {
+            mImageLoader = imageLoader;
+            mDir = dir;
+            mTileCacheBytes = tileCacheBytes;
+            mPreviewWidth = previewWidth;
+            mPreviewHeight = previewHeight;
+        }
+
+        void cancelLoad() {
+            mSignal.cancel();
+            cancel(false);
+        }
+
+        @Override
+        protected TileDecoder doInBackground(Void... params) {
+            if (mPreview == null) {
+                // 返回的bitmap 已登记引用，由onProgressUpdate() 接管
+                Bitmap preview = mImageLoader.loadBlocking(mPhotoUrl, mPreviewWidth, mPreviewHeight);
+                if (isCancelled()) {
+                    releasePreview(preview);
+                } else {
+                    publishProgress(preview);
+                }
+            }
+            try {
+                File file = new File(mDir, mPhotoId + ".jpg");
+                if (file.exists()) {
+                    file.setLastModified(System.currentTimeMillis());
+                } else {
+                    mDir.mkdirs();
+                    PhotoFetcher fetcher = new PhotoFetcher();
+                    String url = mOriginalUrl;
+                    if (url == null) {
+                        GalleryItem fullSize = fetcher.fetchFullSizePhoto(mPhotoId, mSignal);
+                        if (fullSize == null) {
+                            return null;
+                        }
+                        url = fullSize.getUrl();
+                    }
+                    fetcher.downloadToFile(url, file, mSignal);
+                    trimOriginals(mDir);
+                }
+                return new TileDecoder(file.getPath(), mTileCacheBytes);
+            } catch (OperationCanceledException e) {
+                Log.i(TAG, "LoadOriginalTask: canceled " + mPhotoId);
+            } catch (IOException e) {
+                Log.e(TAG, "LoadOriginalTask: ", e);
+            }
+            return null;
+        }
+
+        @Override
+        protected void onProgressUpdate(Bitmap... values) {
+            // 已被取消时onDestroy() 不会再释放它
+            if (isCancelled()) {
+                releasePreview(values[0]);
+                return;
+            }
+            if (values[0] == null) {
+                return;
+            }
+            mPreview = values[0];
+            if (mTiledImageView != null) {
+                mTiledImageView.setPreview(mPreview);
+            }
+        }
+
+        private void releasePreview(Bitmap preview) {
+            if (preview != null) {
+                mImageLoader.getImageCache().releaseBitmap(preview);
+            }
+        }
+
+        @Override
+        protected void onPostExecute(TileDecoder tileDecoder) {
+            mTileDecoder = tileDecoder;
+            if (mTiledImageView != null) {
+                mTiledImageView.setTileDecoder(tileDecoder);
+                mProgressBar.setVisibility(View.GONE);
+            }
+        }
+
+        @Override
+        protected void onCancelled(TileDecoder tileDecoder) {
+            if (tileDecoder != null) {
+                tileDecoder.recycle();
+            }
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package info.kite.lost.android.photogallery;
+
+import android.app.Application;
+
+import info.kite.lost.android.photogallery.net.HttpClient;
+import info.kite.lost.android.photogallery.net.PhotoUrls;
+
+/**
+ * 进程级的初始化：网络连接池与响应缓存，以及api 的根地址
+ * 界面和后台轮询都运行在这个进程里，共用{@link ImageLoader} 及其缓存
+ * <p/>
+ * Created on 2026/10/18.
+ */
+
+public class PhotoGalleryApplication extends Application {
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        HttpClient.install(this);
+        // 调试版本可以用 -PapiEndpoint=... 指向loadtest 模块中的替身服务器
+        PhotoUrls.setEndpoint(BuildConfig.API_ENDPOINT);
+    }
+}
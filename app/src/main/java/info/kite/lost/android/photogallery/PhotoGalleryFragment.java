@@ -1,15 +1,18 @@
 package info.kite.lost.android.photogallery;
 
-import android.graphics.Bitmap;
-import android.graphics.drawable.BitmapDrawable;
+import android.content.Context;
+import android.graphics.drawable.ColorDrawable;
 import android.graphics.drawable.Drawable;
 import android.os.AsyncTask;
 import android.os.Bundle;
+import android.os.CancellationSignal;
 import android.os.Handler;
+import android.os.SystemClock;
 import android.support.v4.content.ContextCompat;
-import android.support.v7.widget.GridLayoutManager;
+import android.support.v7.util.DiffUtil;
 import android.support.v7.widget.RecyclerView;
 import android.support.v7.widget.SearchView;
+import android.support.v7.widget.StaggeredGridLayoutManager;
 import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.Menu;
@@ -19,22 +22,72 @@ import android.view.View;
 import android.view.ViewGroup;
 import android.widget.ImageView;
 
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
+import info.kite.lost.android.photogallery.cache.QueryResultCache;
 import info.kite.lost.android.photogallery.model.GalleryItem;
+import info.kite.lost.android.photogallery.model.ImageTier;
+import info.kite.lost.android.photogallery.net.HttpClient;
 import info.kite.lost.android.photogallery.net.PhotoFetcher;
 import info.kite.lost.android.photogallery.net.ThumbnailDownloader;
+import info.kite.lost.android.photogallery.storage.GalleryStore;
 import info.kite.lost.android.photogallery.storage.QueryPreferences;
 
 public class PhotoGalleryFragment extends VisibleFragment {
     private static final String TAG = "PhotoGalleryFragment";
+    // 网格列数
+    private static final int SPAN_COUNT = 2;
+    // 单元格高度与宽度之比的上限及其倒数下限
+    private static final int MAX_CELL_ASPECT = 2;
+    // 距离列表末尾还剩多少项时开始预取下一页
+    private static final int PREFETCH_DISTANCE = PhotoFetcher.PAGE_SIZE / 2;
+    // 沿滑动方向预取缩略图的格子数，即三行
+    private static final int THUMBNAIL_PREFETCH_COUNT = SPAN_COUNT * 3;
+    // 计流量的网络上预取预算缩小到四分之一
+    private static final int METERED_BUDGET_DIVISOR = 4;
+    // 输入停顿多久后才发起搜索
+    private static final long SEARCH_DEBOUNCE_MILLIS = 300;
+    // 边输入边搜索时关键词的最短长度，更短的只在提交时搜索
+    private static final int MIN_INSTANT_QUERY_LENGTH = 2;
+    // 最近查询结果的缓存页数与有效期
+    private static final int QUERY_CACHE_PAGES = 20;
+    private static final long QUERY_CACHE_TTL_MILLIS = TimeUnit.MINUTES.toMillis(5);
 
     private RecyclerView mPhotoRecyclerView;
     // 从AsyncTask中获取数据
     private List<GalleryItem> mItems = new ArrayList<>();
-    // 图片下载线程
-    private ThumbnailDownloader<PhotoHolder> mThumbnailDownloader;
+    // 分页状态：下一页的页码、是否正在加载、是否还有更多
+    private int mNextPage = 1;
+    private boolean mLoading;
+    private boolean mHasMore = true;
+    // 每次重新查询加一，用来丢弃旧查询返回的结果
+    private int mQueryGeneration;
+    // 每次替换整个列表时加一，只应用最新一次替换算出的差异
+    private int mDiffGeneration;
+    // 用于统计从发起查询到第一次显示内容的时间
+    private long mQueryStartTime;
+    private boolean mFirstContentShown;
+    // 当前正在进行的元数据请求，新查询开始时取消
+    private FetchItemsTask mFetchTask;
+    // 最近查询的结果页，回到之前的关键词时直接显示
+    private final QueryResultCache mQueryResultCache =
+            new QueryResultCache(QUERY_CACHE_PAGES, QUERY_CACHE_TTL_MILLIS);
+    // 输入防抖
+    private final Handler mSearchHandler = new Handler();
+    private Runnable mPendingSearch;
+    // 上一次预取窗口的起点，窗口不变时不重复提交
+    private int mLastPrefetchStart = RecyclerView.NO_POSITION;
+    // 查询每列首末可见位置时复用的数组
+    private final int[] mSpanPositions = new int[SPAN_COUNT];
+    private int mCellWidth;
+    // 尺寸未知时单元格的高度
+    private int mDefaultCellHeight;
+    // 进程级的缩略图加载器，离开画廊后下载与缓存依然保留
+    private ImageLoader mImageLoader;
 
     public PhotoGalleryFragment() {
         // Required empty public constructor
@@ -56,30 +109,11 @@ public class PhotoGalleryFragment extends VisibleFragment {
         // 当activity因为屏幕旋转等原因被销毁重建时fragment不会被销毁，保证了获取json数据的线程不会被终止
         setRetainInstance(true);
         setHasOptionsMenu(true);
-
         // 获得上一次查询结果，从而给items赋值
         updateItems();
 
-        // 在UI Thread中创建的Handler，其引用的Looper就是UI线程的Looper
-        Handler responseHandler = new Handler();
-        // 此时子线程还未开始运行
-        mThumbnailDownloader = new ThumbnailDownloader<>(responseHandler);
-        // 设置回调借口
-        mThumbnailDownloader.setThumbnailDownloadListener(
-                new ThumbnailDownloader.ThumbnailDownloadListener<PhotoHolder>() {
-                    @Override
-                    public void onThumbnailDownloaded(PhotoHolder photoHolder, Bitmap bitmap) {
-                        if (isAdded()) {
-                            Drawable drawable = new BitmapDrawable(getResources(), bitmap);
-                            photoHolder.bindDrawable(drawable);
-                        }
-                    }
-                });
-
-        // HandlerThread设置为死循环，除非手动终止，否则一直处于相应事件和处理事件
-        mThumbnailDownloader.start();
-        mThumbnailDownloader.getLooper();
-        Log.i(TAG, "onCreate: get photo thread started");
+        // 请求随ImageView 的附着与分离自动管理，fragment 不再持有下载线程
+        mImageLoader = ImageLoader.get(getActivity());
     }
 
     @Override
@@ -88,25 +122,75 @@ public class PhotoGalleryFragment extends VisibleFragment {
 
         View v = inflater.inflate(R.layout.fragment_photo_gallery, container, false);
         mPhotoRecyclerView = (RecyclerView) v.findViewById(R.id.recycler_view_fragment_photo_gallery);
-        mPhotoRecyclerView.setLayoutManager(new GridLayoutManager(getActivity(), 2));
+        // 每个单元格按照片的宽高比布局，各列独立排列
+        mPhotoRecyclerView.setLayoutManager(
+                new StaggeredGridLayoutManager(SPAN_COUNT, StaggeredGridLayoutManager.VERTICAL));
+        // 按单元格大小解码缩略图，屏幕旋转后宽度会改变
+        mCellWidth = getResources().getDisplayMetrics().widthPixels / SPAN_COUNT;
+        mDefaultCellHeight = getResources().getDimensionPixelSize(R.dimen.gallery_item_height);
+        mImageLoader.setTargetSize(mCellWidth, mDefaultCellHeight);
+        mPhotoRecyclerView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+                if (dy == 0) {
+                    return;
+                }
+                StaggeredGridLayoutManager layoutManager =
+                        (StaggeredGridLayoutManager) recyclerView.getLayoutManager();
+                int firstVisible = min(layoutManager.findFirstVisibleItemPositions(mSpanPositions));
+                int lastVisible = max(layoutManager.findLastVisibleItemPositions(mSpanPositions));
+                if (firstVisible == RecyclerView.NO_POSITION) {
+                    return;
+                }
+                prefetchThumbnails(dy > 0 ? lastVisible + 1 : firstVisible - 1, dy > 0);
+                if (dy > 0 && lastVisible >= layoutManager.getItemCount() - PREFETCH_DISTANCE) {
+                    loadNextPage();
+                }
+            }
+        });
         setupAdapter();
         return v;
     }
 
     @Override
-    public void onDestroyView() {
-        super.onDestroyView();
-        // 清楚队列，当屏幕旋转导致activity被销毁时启用
-        mItems.clear();
-        mThumbnailDownloader.clearQueue();
+    public void onResume() {
+        super.onResume();
+        // 网络类型可能在后台期间改变，同时决定网格加载的档位
+        long budget = ThumbnailDownloader.DEFAULT_PREFETCH_BUDGET;
+        if (mImageLoader.refreshNetwork() != ImageTier.Network.UNMETERED) {
+            budget /= METERED_BUDGET_DIVISOR;
+        }
+        mImageLoader.setPrefetchBudget(budget);
     }
 
     @Override
     public void onDestroy() {
         super.onDestroy();
-        // 终止HandlerThread，否则HandlerThread会一直运行，可能导致内存泄漏
-        mThumbnailDownloader.quit();
-        Log.i(TAG, "onDestroy: get photo thread destroyed");
+        cancelPendingSearch();
+        if (mFetchTask != null) {
+            mFetchTask.cancelFetch();
+        }
+        // 加载器属于进程，不持有fragment 的引用，正在进行的下载继续为下一个画廊预热缓存
+        // flush() 要写磁盘，不在主线程上做
+        AsyncTask.THREAD_POOL_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                HttpClient.flush();
+            }
+        });
+        Log.i(TAG, "onDestroy: " + mImageLoader.getImageCache());
+    }
+
+    /**
+     * adb shell dumpsys activity info.kite.lost.android.photogallery/.PhotoGalleryActivity
+     * 输出缩略图加载的各阶段耗时分布、队列深度与缓存命中率
+     */
+    @Override
+    public void dump(String prefix, FileDescriptor fd, PrintWriter writer, String[] args) {
+        super.dump(prefix, fd, writer, args);
+        writer.print(prefix);
+        writer.println("Thumbnails:");
+        mImageLoader.dump(prefix + "  ", writer);
     }
 
     @Override
@@ -121,22 +205,35 @@ public class PhotoGalleryFragment extends VisibleFragment {
             @Override
             public boolean onQueryTextSubmit(String query) {
                 Log.i(TAG, "onQueryTextSubmit: " + query);
+                cancelPendingSearch();
                 if (isAdded()) {
-                    /**
-                     * 向{@link android.content.SharedPreferences}中存入最近搜索的关键词
-                     * 长期贮存
-                     */
-                    QueryPreferences.setStoredQuery(getActivity(), query);
-                    updateItems();
+                    searchFor(query);
                 }
                 return true;
             }
 
             @Override
-            public boolean onQueryTextChange(String newText) {
-                Log.i(TAG, "onQueryTextChange: " + newText);
-                // 无需相应
-                return false;
+            public boolean onQueryTextChange(final String newText) {
+                if (BuildConfig.DEBUG) {
+                    Log.i(TAG, "onQueryTextChange: " + newText);
+                }
+                // 每次输入都推迟搜索，停顿之后才真正发起请求
+                cancelPendingSearch();
+                if (newText.trim().length() < MIN_INSTANT_QUERY_LENGTH) {
+                    return false;
+                }
+                mPendingSearch = new Runnable() {
+                    @Override
+                    public void run() {
+                        mPendingSearch = null;
+                        if (isAdded() && !newText.equals(
+                                QueryPreferences.getStoredQuery(getActivity()))) {
+                            searchFor(newText);
+                        }
+                    }
+                };
+                mSearchHandler.postDelayed(mPendingSearch, SEARCH_DEBOUNCE_MILLIS);
+                return true;
             }
         });
         searchView.setOnSearchClickListener(new View.OnClickListener() {
@@ -180,36 +277,244 @@ public class PhotoGalleryFragment extends VisibleFragment {
     }
 
     /**
-     * items更新后会触发setupAdapter()，从而导致界面图片的更新
+     * 向{@link android.content.SharedPreferences}中存入最近搜索的关键词，长期贮存，并重新查询
+     */
+    private void searchFor(String query) {
+        QueryPreferences.setStoredQuery(getActivity(), query);
+        updateItems();
+    }
+
+    private void cancelPendingSearch() {
+        if (mPendingSearch != null) {
+            mSearchHandler.removeCallbacks(mPendingSearch);
+            mPendingSearch = null;
+        }
+    }
+
+    /**
+     * 重新从第一页开始查询，items更新后会触发replaceItems()，从而导致界面图片的更新
      * 从SP获取数据表示应用打开时会显示上一次搜索的记录
+     * 之前查询尚未完成的请求会被取消，连接随之断开
      */
     private void updateItems() {
+        if (mFetchTask != null) {
+            mFetchTask.cancelFetch();
+            mFetchTask = null;
+        }
+        mQueryGeneration++;
+        // 上一个查询尚未应用的差异作废
+        mDiffGeneration++;
+        mNextPage = 1;
+        mHasMore = true;
+        mLoading = false;
+        mQueryStartTime = SystemClock.elapsedRealtime();
+        mFirstContentShown = false;
+        mLastPrefetchStart = RecyclerView.NO_POSITION;
+        // 先显示本地存储的第一页，网络请求随后在同一个串行executor上执行
+        // 内存中有未过期的结果时两者都不需要
+        String query = QueryPreferences.getStoredQuery(getActivity());
+        if (mQueryResultCache.get(query, 1, SystemClock.elapsedRealtime()) == null) {
+            new LoadStoredItemsTask(getActivity(), query, mQueryGeneration).execute();
+        }
+        loadNextPage();
+    }
+
+    /**
+     * 记录一次查询的首屏时间，分别统计来自本地存储和来自网络的情况
+     */
+    private void logFirstContent(String source) {
+        if (mFirstContentShown) {
+            return;
+        }
+        mFirstContentShown = true;
+        Log.i(TAG, "time to first content: " + (SystemClock.elapsedRealtime() - mQueryStartTime)
+                + "ms from " + source);
+    }
+
+    /**
+     * @return 各列中最小的有效位置，都无效时为NO_POSITION
+     */
+    private static int min(int[] positions) {
+        int result = RecyclerView.NO_POSITION;
+        for (int position : positions) {
+            if (position != RecyclerView.NO_POSITION
+                    && (result == RecyclerView.NO_POSITION || position < result)) {
+                result = position;
+            }
+        }
+        return result;
+    }
+
+    private static int max(int[] positions) {
+        int result = RecyclerView.NO_POSITION;
+        for (int position : positions) {
+            result = Math.max(result, position);
+        }
+        return result;
+    }
+
+    /**
+     * 沿滑动方向预取接下来若干格的缩略图，让它们滑入屏幕时已在内存中
+     *
+     * @param start   紧挨可见区域的第一个位置
+     * @param forward 是否向下滑动
+     */
+    private void prefetchThumbnails(int start, boolean forward) {
+        if (start == mLastPrefetchStart) {
+            return;
+        }
+        mLastPrefetchStart = start;
+        List<String> urls = new ArrayList<>(THUMBNAIL_PREFETCH_COUNT);
+        int step = forward ? 1 : -1;
+        for (int i = 0, position = start; i < THUMBNAIL_PREFETCH_COUNT
+                && position >= 0 && position < mItems.size(); i++, position += step) {
+            urls.add(mImageLoader.urlFor(mItems.get(position)));
+        }
+        mImageLoader.prefetch(urls);
+    }
+
+    /**
+     * 加载下一页，已在加载或没有更多数据时忽略
+     */
+    private void loadNextPage() {
+        if (mLoading || !mHasMore) {
+            return;
+        }
         String query = QueryPreferences.getStoredQuery(getActivity());
-        new FetchItemsTask(query).execute();
+        List<GalleryItem> cached = mQueryResultCache.get(query, mNextPage,
+                SystemClock.elapsedRealtime());
+        if (cached != null) {
+            onPageLoaded(mNextPage, cached, "cache");
+            return;
+        }
+        mLoading = true;
+        mFetchTask = new FetchItemsTask(getActivity(), query, mNextPage, mQueryGeneration);
+        mFetchTask.execute();
+    }
+
+    /**
+     * 一页结果到达，第一页替换列表，之后的页追加到末尾
+     *
+     * @param source 结果来源，用于统计首屏时间
+     */
+    private void onPageLoaded(int page, List<GalleryItem> galleryItems, final String source) {
+        mHasMore = !galleryItems.isEmpty();
+        mNextPage = page + 1;
+
+        if (page == 1) {
+            // 差异算完之前不加载下一页，避免追加到即将被替换的列表上
+            mLoading = true;
+            replaceItems(galleryItems, new Runnable() {
+                @Override
+                public void run() {
+                    mLoading = false;
+                    if (!mItems.isEmpty()) {
+                        logFirstContent(source);
+                    }
+                }
+            });
+        } else {
+            mLoading = false;
+            if (!galleryItems.isEmpty()) {
+                // 追加到已有列表，只通知新增的范围，已绑定的holder不受影响
+                int start = mItems.size();
+                mItems.addAll(galleryItems);
+                if (isAdded()) {
+                    mPhotoRecyclerView.getAdapter().notifyItemRangeInserted(start, galleryItems.size());
+                }
+            }
+        }
+    }
+
+    /**
+     * 请求失败且本地存储中也没有这一页，页码不前进，mHasMore 保持不变，下次滑到底部时重试
+     */
+    private void onPageFailed(int page) {
+        mLoading = false;
+        Log.i(TAG, "onPageFailed: page " + page + " will be retried");
+    }
+
+    /**
+     * 用新的列表替换当前显示的列表
+     * 已有内容时在后台线程按id和内容计算差异，再在UI线程只通知变化的部分，未变的格子保留已绑定的图片
+     *
+     * @param galleryItems 新的列表
+     * @param onApplied    替换生效后在UI线程执行，被更新的替换取代时不执行
+     */
+    private void replaceItems(List<GalleryItem> galleryItems, Runnable onApplied) {
+        int generation = ++mDiffGeneration;
+        if (!isAdded() || mPhotoRecyclerView == null || mPhotoRecyclerView.getAdapter() == null
+                || mItems.isEmpty()) {
+            mItems = galleryItems;
+            setupAdapter();
+            onApplied.run();
+            return;
+        }
+        // 串行executor 可能正被网络请求占用
+        new DiffTask(mItems, galleryItems, generation, onApplied)
+                .executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
     }
 
     /**
      * recycler view设置adapter的时候，也是adapter开始工作的时候，数据显示自此开始
+     * 已有adapter时只替换数据，不丢弃已绑定的holder
      */
     private void setupAdapter() {
         // PhotoHolder的构造函数需要getActivity() 方法
         // 因为开启了子线程的缘由，可能fragment回调的时候activity已经不复存在，所以检测一下是否绑定
-        if (isAdded()) {
-            mPhotoRecyclerView.setAdapter(new PhotoAdapter(mItems));
+        if (isAdded() && mPhotoRecyclerView != null) {
+            PhotoAdapter adapter = (PhotoAdapter) mPhotoRecyclerView.getAdapter();
+            if (adapter == null) {
+                mPhotoRecyclerView.setAdapter(new PhotoAdapter(mItems));
+            } else {
+                adapter.setGalleryItems(mItems);
+                adapter.notifyDataSetChanged();
+            }
         }
     }
 
-    private class PhotoHolder extends RecyclerView.ViewHolder {
+    private class PhotoHolder extends RecyclerView.ViewHolder implements View.OnClickListener {
         private ImageView mItemImageView;
+        private GalleryItem mGalleryItem;
 
         public PhotoHolder(View itemView) {
             super(itemView);
             mItemImageView = (ImageView) itemView.findViewById(R.id.image_view_item_fragment_photo_gallery);
+            itemView.setOnClickListener(this);
         }
 
         public void bindDrawable(Drawable drawable) {
             mItemImageView.setImageDrawable(drawable);
         }
+
+        /**
+         * 按原图宽高比确定单元格高度，并以记录的颜色占位，图片到达后不再重新布局
+         */
+        public void bindGalleryItem(GalleryItem galleryItem) {
+            mGalleryItem = galleryItem;
+            int height = mDefaultCellHeight;
+            if (galleryItem.getWidth() > 0 && galleryItem.getHeight() > 0) {
+                height = (int) ((long) mCellWidth * galleryItem.getHeight() / galleryItem.getWidth());
+                // 极端的全景或竖幅图不让单元格过扁或过长
+                height = Math.max(mCellWidth / MAX_CELL_ASPECT, Math.min(mCellWidth * MAX_CELL_ASPECT, height));
+            }
+            ViewGroup.LayoutParams params = mItemImageView.getLayoutParams();
+            if (params.height != height) {
+                params.height = height;
+                mItemImageView.setLayoutParams(params);
+            }
+            if (galleryItem.getColor() != 0) {
+                bindDrawable(new ColorDrawable(galleryItem.getColor()));
+            } else {
+                // 这里填充的占位图片能避免recycler view回收引起的闪烁
+                bindDrawable(ContextCompat.getDrawable(getActivity(), R.drawable.defaut_flower));
+            }
+        }
+
+        @Override
+        public void onClick(View v) {
+            startActivity(PhotoDetailActivity.newIntent(getActivity(), mGalleryItem));
+        }
     }
 
     private class PhotoAdapter extends RecyclerView.Adapter<PhotoHolder> {
@@ -219,6 +524,13 @@ public class PhotoGalleryFragment extends VisibleFragment {
             mGalleryItems = galleryItems;
         }
 
+        /**
+         * 只替换数据，调用者负责发出相应的变化通知
+         */
+        public void setGalleryItems(List<GalleryItem> galleryItems) {
+            mGalleryItems = galleryItems;
+        }
+
         @Override
         public PhotoHolder onCreateViewHolder(ViewGroup parent, int viewType) {
             LayoutInflater inflater = LayoutInflater.from(getActivity());
@@ -228,13 +540,19 @@ public class PhotoGalleryFragment extends VisibleFragment {
 
         @Override
         public void onBindViewHolder(PhotoHolder holder, int position) {
-            Log.i(TAG, "onBindViewHolder: check for" + holder);
+            if (BuildConfig.DEBUG) {
+                Log.i(TAG, "onBindViewHolder: check for" + holder);
+            }
             GalleryItem item = mGalleryItems.get(position);
-            // 这里填充的占位图片能避免recycler view回收引起的闪烁
-            Drawable placeholder = ContextCompat.getDrawable(getActivity(), R.drawable.defaut_flower);
-            holder.bindDrawable(placeholder);
-            // 传入holder和url，downloader将其存入map中，留待相应worker处理
-            mThumbnailDownloader.queueThumbnail(holder, item.getUrl());
+            holder.bindGalleryItem(item);
+            // 以ImageView 为目标，view 分离时请求自动释放
+            mImageLoader.load(holder.mItemImageView, item);
+        }
+
+        @Override
+        public void onViewRecycled(PhotoHolder holder) {
+            // holder进入回收池，取消它还没完成的下载
+            mImageLoader.cancel(holder.mItemImageView);
         }
 
         @Override
@@ -247,25 +565,139 @@ public class PhotoGalleryFragment extends VisibleFragment {
      * 下载元数据的线程，采用AsyncTask的特点是方便与UI线程快速切换且存在时间短
      */
     private class FetchItemsTask extends AsyncTask<Void, Void, List<GalleryItem>> {
+        private Context mContext;
         private String mQuery;
-
-        public FetchItemsTask(String query) {
+        private int mPage;
+        private int mGeneration;
+        // 取消时断开正在进行的连接
+        private final CancellationSignal mSignal = new CancellationSignal();
+        // 网络请求失败，与服务器返回空页区分开，空页才表示没有更多数据
+        private boolean mFailed;
+
+        public FetchItemsTask(Context context, String query, int page, int generation) {
+            mContext = context.getApplicationContext();
             mQuery = query;
+            mPage = page;
+            mGeneration = generation;
+        }
+
+        /**
+         * 查询已被新的查询取代，断开连接，结果不再回调onPostExecute()
+         */
+        public void cancelFetch() {
+            mSignal.cancel();
+            cancel(false);
         }
 
         @Override
         protected List<GalleryItem> doInBackground(Void... params) {
+            List<GalleryItem> items;
             if (mQuery == null) {
-                return new PhotoFetcher().fetchPopularPhotos();
+                items = new PhotoFetcher().fetchPopularPhotos(mPage, mSignal);
+            } else {
+                items = new PhotoFetcher().searchPhotos(mQuery, mPage, mSignal);
+            }
+            if (isCancelled()) {
+                return null;
+            }
+            GalleryStore store = GalleryStore.get(mContext);
+            if (items == null) {
+                // 网络不可用时退回到本地存储，离线也能继续翻页
+                items = store.getPage(mQuery, mPage);
+                mFailed = items.isEmpty();
+            } else if (!items.isEmpty()) {
+                // 之前解码过的缩略图带上记录的颜色
+                store.fillColors(items);
+                store.putPage(mQuery, mPage, items);
+                mQueryResultCache.put(mQuery, mPage, items, SystemClock.elapsedRealtime());
+            }
+            return items;
+        }
+
+        @Override
+        protected void onPostExecute(List<GalleryItem> galleryItems) {
+            if (mGeneration != mQueryGeneration) {
+                // 期间用户发起了新的查询，这一页已经没有意义
+                return;
+            }
+            mFetchTask = null;
+            if (mFailed) {
+                onPageFailed(mPage);
             } else {
-                return new PhotoFetcher().searchPhotos(mQuery);
+                onPageLoaded(mPage, galleryItems, "network");
             }
         }
+    }
+
+    /**
+     * 从本地存储读取第一页，让冷启动不必等待网络
+     */
+    private class LoadStoredItemsTask extends AsyncTask<Void, Void, List<GalleryItem>> {
+        private Context mContext;
+        private String mQuery;
+        private int mGeneration;
+
+        public LoadStoredItemsTask(Context context, String query, int generation) {
+            mContext = context.getApplicationContext();
+            mQuery = query;
+            mGeneration = generation;
+        }
+
+        @Override
+        protected List<GalleryItem> doInBackground(Void... params) {
+            return GalleryStore.get(mContext).getPage(mQuery, 1);
+        }
 
         @Override
         protected void onPostExecute(List<GalleryItem> galleryItems) {
-            mItems = galleryItems;
-            setupAdapter();
+            // 查询已经改变，或者网络结果已经先到了
+            if (mGeneration != mQueryGeneration || mNextPage != 1 || galleryItems.isEmpty()) {
+                return;
+            }
+            replaceItems(galleryItems, new Runnable() {
+                @Override
+                public void run() {
+                    logFirstContent("store");
+                }
+            });
+        }
+    }
+
+    /**
+     * 在后台线程计算新旧列表的差异，列表较长时calculateDiff() 可能耗时数毫秒以上
+     */
+    private class DiffTask extends AsyncTask<Void, Void, DiffUtil.DiffResult> {
+        private final List<GalleryItem> mOldItems;
+        private final List<GalleryItem> mNewItems;
+        private final int mGeneration;
+        private final Runnable mOnApplied;
+
+        public DiffTask(List<GalleryItem> oldItems, List<GalleryItem> newItems, int generation,
+                        Runnable onApplied) {
+            mOldItems = oldItems;
+            mNewItems = newItems;
+            mGeneration = generation;
+            mOnApplied = onApplied;
+        }
+
+        @Override
+        protected DiffUtil.DiffResult doInBackground(Void... params) {
+            return DiffUtil.calculateDiff(new GalleryDiffCallback(mOldItems, mNewItems));
+        }
+
+        @Override
+        protected void onPostExecute(DiffUtil.DiffResult diff) {
+            // 期间又有新的替换，或者列表已经变了，这次的差异已经不适用
+            if (mGeneration != mDiffGeneration || mItems != mOldItems) {
+                return;
+            }
+            mItems = mNewItems;
+            if (isAdded() && mPhotoRecyclerView.getAdapter() != null) {
+                PhotoAdapter adapter = (PhotoAdapter) mPhotoRecyclerView.getAdapter();
+                adapter.setGalleryItems(mItems);
+                diff.dispatchUpdatesTo(adapter);
+            }
+            mOnApplied.run();
         }
     }
 }
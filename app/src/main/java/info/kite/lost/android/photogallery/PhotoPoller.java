@@ -0,0 +1,191 @@
+package info.kite.lost.android.photogallery;
+
+import android.app.Activity;
+import android.app.Notification;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.support.v4.app.NotificationCompat;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+import info.kite.lost.android.photogallery.model.GalleryItem;
+import info.kite.lost.android.photogallery.net.PhotoFetcher;
+import info.kite.lost.android.photogallery.storage.QueryPreferences;
+import info.kite.lost.android.photogallery.storage.SeenIdSet;
+
+/**
+ * 一次后台轮询的具体工作，由{@link PollService} 和{@link PollJobService} 共用
+ * 只请求排在最前面的少量照片，与持久化的已见id 集合比较，准确数出新照片的数量
+ * 最新照片的缩略图经由进程级的{@link ImageLoader} 加载，既用作通知大图标，也为之后打开画廊预热缓存
+ * <p>
+ * Created on 2026/10/18.
+ */
+
+public class PhotoPoller {
+    private static final String TAG = "PhotoPoller";
+    // 轮询时只取前几个id，足以判断结果是否变化
+    private static final int POLL_ID_COUNT = 5;
+    // 已见id 保存在一个文件中，只对应当前的查询
+    private static final String SEEN_IDS_FILE = "seen_ids";
+    private static final int SEEN_IDS_CAPACITY = 1024;
+
+    /**
+     * 一次轮询的结果
+     */
+    public enum Result {
+        // 出现了新的照片
+        CHANGED,
+        // 与上次结果相同
+        UNCHANGED,
+        // 网络请求失败，应稍后重试
+        FAILED
+    }
+
+    /**
+     * 在工作线程中执行一次轮询，有新照片时发出通知
+     * 某个查询的第一次轮询只记录当前的结果，不发通知
+     *
+     * @param context {@link Context}
+     * @return 轮询结果
+     */
+    public static Result poll(Context context) {
+        String query = QueryPreferences.getStoredQuery(context);
+
+        List<GalleryItem> items = new PhotoFetcher().fetchNewestItems(query, POLL_ID_COUNT);
+        if (items == null) {
+            return Result.FAILED;
+        }
+        if (items.isEmpty()) {
+            // 请求成功但查询没有结果，不是错误，按没有变化处理
+            Log.i(TAG, "poll: query has no results");
+            return Result.UNCHANGED;
+        }
+
+        File file = new File(context.getFilesDir(), SEEN_IDS_FILE);
+        String queryKey = query == null ? "" : query;
+        SeenIdSet seenIds = readSeenIds(file, queryKey);
+        boolean baseline = seenIds == null;
+        if (baseline) {
+            seenIds = new SeenIdSet(SEEN_IDS_CAPACITY);
+        }
+        // 一次遍历，同时记录新的id
+        int newCount = 0;
+        GalleryItem newest = null;
+        for (GalleryItem item : items) {
+            if (seenIds.add(SeenIdSet.keyOf(item.getId()))) {
+                newCount++;
+                if (newest == null) {
+                    newest = item;
+                }
+            }
+        }
+        if (newCount > 0) {
+            writeSeenIds(file, queryKey, seenIds);
+        }
+        if (baseline || newCount == 0) {
+            Log.i(TAG, "poll: no new results" + (baseline ? ", baseline recorded" : ""));
+            return Result.UNCHANGED;
+        }
+        Log.i(TAG, "poll: " + newCount + " new results, newest " + newest.getId());
+
+        Resources resources = context.getResources();
+        Intent i = PhotoGalleryActivity.newIntent(context);
+        PendingIntent pi = PendingIntent.getActivity(context, 0, i, 0);
+
+        // 与画廊共用同一个加载器，缩略图加载失败时只是没有大图标
+        // 进程可能刚由job 启动，画廊还没有设置过网格尺寸，按通知大图标的尺寸解码
+        ImageLoader imageLoader = ImageLoader.get(context);
+        Bitmap largeIcon = imageLoader.loadBlocking(newest.getUrl(),
+                resources.getDimensionPixelSize(android.R.dimen.notification_large_icon_width),
+                resources.getDimensionPixelSize(android.R.dimen.notification_large_icon_height));
+
+        // 构建一个notification
+        Notification notification = new NotificationCompat.Builder(context)
+                .setTicker(resources.getString(R.string.new_pictures_title))
+                .setSmallIcon(android.R.drawable.ic_menu_report_image)
+                .setLargeIcon(largeIcon)
+                .setContentTitle(resources.getString(R.string.new_pictures_title))
+                .setContentText(resources.getQuantityString(R.plurals.new_pictures_text,
+                        newCount, newCount))
+                .setContentIntent(pi) // 相应notification点击事件
+                .setAutoCancel(true) // 设置点击后消失
+                .build();
+        showBackgroundNotification(context, 0, notification);
+        // 发出通知时大图标已经写入Parcel，不再需要钉住内存缓存中的那一份
+        if (largeIcon != null) {
+            imageLoader.getImageCache().releaseBitmap(largeIcon);
+        }
+        return Result.CHANGED;
+    }
+
+    /**
+     * @return 文件中保存的是另一个查询或文件不存在时为null
+     */
+    private static SeenIdSet readSeenIds(File file, String queryKey) {
+        try {
+            DataInputStream in = new DataInputStream(
+                    new BufferedInputStream(new FileInputStream(file)));
+            try {
+                if (!queryKey.equals(in.readUTF())) {
+                    return null;
+                }
+                return SeenIdSet.readFrom(in, SEEN_IDS_CAPACITY);
+            } finally {
+                in.close();
+            }
+        } catch (FileNotFoundException e) {
+            return null;
+        } catch (IOException e) {
+            Log.e(TAG, "readSeenIds: ", e);
+            return null;
+        }
+    }
+
+    /**
+     * 先写临时文件再改名，写到一半被杀死也不会损坏已有的记录
+     */
+    private static void writeSeenIds(File file, String queryKey, SeenIdSet seenIds) {
+        File tmp = new File(file.getPath() + ".tmp");
+        try {
+            DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(tmp)));
+            try {
+                out.writeUTF(queryKey);
+                seenIds.writeTo(out);
+            } finally {
+                out.close();
+            }
+            if (!tmp.renameTo(file)) {
+                throw new IOException("rename failed: " + file);
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "writeSeenIds: ", e);
+            tmp.delete();
+        }
+    }
+
+    /**
+     * 发送有序广播，界面可见时{@link VisibleFragment} 会拦截，否则由{@link NotificationReceiver} 显示通知
+     */
+    private static void showBackgroundNotification(Context context, int requestCode,
+                                                   Notification notification) {
+        Intent i = new Intent(PollService.ACTION_SHOW_NOTIFICATION);
+        i.putExtra(PollService.REQUEST_CODE, requestCode);
+        i.putExtra(PollService.NOTIFICATION, notification);
+        context.sendOrderedBroadcast(i, PollService.PERM_PRIVATE, null, null,
+                Activity.RESULT_OK, null, null);
+    }
+}
@@ -0,0 +1,150 @@
+package info.kite.lost.android.photogallery;
+
+import android.annotation.TargetApi;
+import android.app.job.JobInfo;
+import android.app.job.JobParameters;
+import android.app.job.JobScheduler;
+import android.app.job.JobService;
+import android.content.ComponentName;
+import android.content.Context;
+import android.os.AsyncTask;
+import android.os.Build;
+import android.util.Log;
+
+import java.util.concurrent.TimeUnit;
+
+import info.kite.lost.android.photogallery.storage.QueryPreferences;
+
+/**
+ * API 21 起使用{@link JobScheduler} 进行后台轮询，替代AlarmManager + IntentService
+ * 只在不计流量的网络、充电且设备空闲时执行，由系统把多个应用的网络请求合并在一起，减少射频唤醒
+ * <p>
+ * 每次执行完都重新安排下一次：结果有变化时间隔减半，没有变化时加倍，失败时自行指数退避
+ * 空闲约束的job 不遵守系统的退避策略，同时设置两者build() 会抛出异常，所以退避时间记录在{@link QueryPreferences}
+ * <p>
+ * Created on 2026/10/18.
+ */
+
+@TargetApi(Build.VERSION_CODES.LOLLIPOP)
+public class PollJobService extends JobService {
+    private static final String TAG = "PollJobService";
+    private static final int JOB_ID = 1;
+
+    // 自适应间隔的范围
+    static final long MIN_INTERVAL = TimeUnit.MINUTES.toMillis(15);
+    static final long MAX_INTERVAL = TimeUnit.HOURS.toMillis(12);
+    // 失败后的初始退避时间，之后每次失败加倍，不超过正常间隔的上限
+    static final long INITIAL_BACKOFF = TimeUnit.SECONDS.toMillis(30);
+
+    private PollTask mCurrentTask;
+
+    /**
+     * 按当前记录的间隔安排下一次轮询，上次失败时改用退避时间
+     *
+     * @param context {@link Context}
+     * @param isOn    开启或关闭
+     */
+    public static void setScheduled(Context context, boolean isOn) {
+        JobScheduler scheduler = (JobScheduler) context.getSystemService(Context.JOB_SCHEDULER_SERVICE);
+        if (!isOn) {
+            scheduler.cancel(JOB_ID);
+            return;
+        }
+        long backoff = QueryPreferences.getPollBackoff(context);
+        long interval = backoff > 0 ? backoff
+                : QueryPreferences.getPollInterval(context, MIN_INTERVAL);
+        JobInfo jobInfo = new JobInfo.Builder(JOB_ID, new ComponentName(context, PollJobService.class))
+                .setRequiredNetworkType(JobInfo.NETWORK_TYPE_UNMETERED)
+                .setRequiresCharging(true)
+                .setRequiresDeviceIdle(true)
+                .setMinimumLatency(interval)
+                // 重启后依然有效，需要RECEIVE_BOOT_COMPLETED 权限
+                .setPersisted(true)
+                .build();
+        scheduler.schedule(jobInfo);
+        Log.i(TAG, "setScheduled: next poll in " + TimeUnit.MILLISECONDS.toMinutes(interval) + "min");
+    }
+
+    public static boolean isScheduled(Context context) {
+        JobScheduler scheduler = (JobScheduler) context.getSystemService(Context.JOB_SCHEDULER_SERVICE);
+        for (JobInfo jobInfo : scheduler.getAllPendingJobs()) {
+            if (jobInfo.getId() == JOB_ID) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 根据本次结果计算下一次的间隔
+     */
+    static long nextInterval(long interval, PhotoPoller.Result result) {
+        switch (result) {
+            case CHANGED:
+                return Math.max(MIN_INTERVAL, interval / 2);
+            case UNCHANGED:
+                return Math.min(MAX_INTERVAL, interval * 2);
+            default:
+                return interval;
+        }
+    }
+
+    /**
+     * 连续失败时的下一次退避时间
+     *
+     * @param backoff 上次的退避时间，0 表示上次成功
+     */
+    static long nextBackoff(long backoff) {
+        return backoff <= 0 ? INITIAL_BACKOFF : Math.min(MAX_INTERVAL, backoff * 2);
+    }
+
+    /**
+     * 运行在主线程，网络请求交给AsyncTask
+     *
+     * @return true 表示工作仍在进行
+     */
+    @Override
+    public boolean onStartJob(JobParameters params) {
+        mCurrentTask = new PollTask();
+        mCurrentTask.execute(params);
+        return true;
+    }
+
+    /**
+     * 约束条件不再满足（例如拔掉了电源）时被调用，这不是失败，按原来的间隔重新安排
+     *
+     * @return false，空闲约束的job 不能交给系统的退避策略
+     */
+    @Override
+    public boolean onStopJob(JobParameters params) {
+        if (mCurrentTask != null) {
+            mCurrentTask.cancel(true);
+        }
+        setScheduled(this, QueryPreferences.isAlarmOn(this));
+        return false;
+    }
+
+    private class PollTask extends AsyncTask<JobParameters, Void, Void> {
+        @Override
+        protected Void doInBackground(JobParameters... params) {
+            JobParameters jobParams = params[0];
+            Context context = PollJobService.this;
+            PhotoPoller.Result result = PhotoPoller.poll(context);
+            if (isCancelled()) {
+                return null;
+            }
+            if (result == PhotoPoller.Result.FAILED) {
+                QueryPreferences.setPollBackoff(context,
+                        nextBackoff(QueryPreferences.getPollBackoff(context)));
+            } else {
+                QueryPreferences.setPollBackoff(context, 0);
+                QueryPreferences.setPollInterval(context, nextInterval(
+                        QueryPreferences.getPollInterval(context, MIN_INTERVAL), result));
+            }
+            jobFinished(jobParams, false);
+            // 一次性的job，执行完后按新的间隔重新安排
+            setScheduled(context, QueryPreferences.isAlarmOn(context));
+            return null;
+        }
+    }
+}
@@ -1,22 +1,15 @@
 package info.kite.lost.android.photogallery;
 
-import android.app.Activity;
 import android.app.AlarmManager;
 import android.app.IntentService;
-import android.app.Notification;
 import android.app.PendingIntent;
 import android.content.Context;
 import android.content.Intent;
-import android.content.res.Resources;
 import android.net.ConnectivityManager;
+import android.os.Build;
 import android.os.SystemClock;
-import android.support.v4.app.NotificationCompat;
 import android.util.Log;
 
-import java.util.List;
-
-import info.kite.lost.android.photogallery.model.GalleryItem;
-import info.kite.lost.android.photogallery.net.PhotoFetcher;
 import info.kite.lost.android.photogallery.storage.QueryPreferences;
 
 /**
@@ -51,10 +44,16 @@ public class PollService extends IntentService {
 
     /**
      * 静态方法需要外部传入context
+     * API 21 起交给{@link PollJobService}，以前的版本使用AlarmManager 定时启动本service
      * @param context {@link Context}
      * @param isOn 定时服务开关
      */
     public static void setServiceAlarm(Context context, boolean isOn) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            PollJobService.setScheduled(context, isOn);
+            QueryPreferences.setAlarmOn(context, isOn);
+            return;
+        }
         // 启动PollService的intent
         Intent i = PollService.newIntent(context);
         // 封装进PendingIntent，getService封装了startService()方法
@@ -81,6 +80,9 @@ public class PollService extends IntentService {
      * @return Service定时是否设置
      */
     public static boolean isServiceAlarmOn(Context context) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            return PollJobService.isScheduled(context);
+        }
         Intent i = PollService.newIntent(context);
         PendingIntent pi = PendingIntent.getService(context, 0, i, PendingIntent.FLAG_NO_CREATE);
         return pi != null;
@@ -92,55 +94,7 @@ public class PollService extends IntentService {
             return;
         }
         Log.i(TAG, "onHandleIntent: received an intent " + intent);
-        String query = QueryPreferences.getStoredQuery(this);
-        String lastResultId = QueryPreferences.getPrefLastResultId(this);
-        List<GalleryItem> itemsOfService;
-
-        if (query == null) {
-            itemsOfService = new PhotoFetcher().fetchPopularPhotos();
-        } else {
-            itemsOfService = new PhotoFetcher().searchPhotos(query);
-        }
-
-        if (itemsOfService.size() == 0) {
-            return;
-        }
-
-        String resultId = itemsOfService.get(0).getId();
-        if (resultId.equals(lastResultId)) {
-            Log.i(TAG, "onHandleIntent: got an old result" + resultId);
-        } else {
-            Log.i(TAG, "got an new result: " + resultId);
-        }
-
-        Resources resources = getResources();
-        Intent i = PhotoGalleryActivity.newIntent(this);
-        PendingIntent pi = PendingIntent.getActivity(this, 0, i, 0);
-
-        // 构建一个notification
-        Notification notification = new NotificationCompat.Builder(this)
-                .setTicker(resources.getString(R.string.new_pictures_title))
-                .setSmallIcon(android.R.drawable.ic_menu_report_image)
-                .setContentTitle(resources.getString(R.string.new_pictures_title))
-                .setContentText(resources.getString(R.string.new_pictures_text))
-                .setContentIntent(pi) // 相应notification点击事件
-                .setAutoCancel(true) // 设置点击后消失
-                .build();
-//        NotificationManagerCompat notificationManager = NotificationManagerCompat.from(this);
-//        // post notification
-//        notificationManager.notify(0, notification);
-//        // 发送广播，接收方是VisibleFragment
-//        sendBroadcast(new Intent(ACTION_SHOW_NOTIFICATION), PERM_PRIVATE);
-        showBackgroundNotification(0, notification);
-
-        QueryPreferences.setPrefLastResultId(this, resultId);
-    }
-
-    private void showBackgroundNotification(int requestCode, Notification notification) {
-        Intent i = new Intent(ACTION_SHOW_NOTIFICATION);
-        i.putExtra(REQUEST_CODE, requestCode);
-        i.putExtra(NOTIFICATION, notification);
-        sendOrderedBroadcast(i, PERM_PRIVATE, null, null, Activity.RESULT_OK, null, null);
+        PhotoPoller.poll(this);
     }
 
     /**
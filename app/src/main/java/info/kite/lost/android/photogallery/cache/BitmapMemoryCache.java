@@ -0,0 +1,165 @@
+package info.kite.lost.android.photogallery.cache;
+
+import android.graphics.Bitmap;
+import android.support.v4.util.LruCache;
+
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * 内存中的一级缓存，按照bitmap实际占用的字节数而不是个数来限制容量
+ * 使用support 库的LruCache，API 17 以前也能在内存紧张时主动缩减
+ * <p/>
+ * 被淘汰的bitmap 可能仍显示在某个view 上，因此显示者需要{@link #acquire(Bitmap)} / {@link #release(Bitmap)}
+ * 只有显示过、且所有显示者都已释放的bitmap 才在被淘汰后放入复用池，从未经由view 显示的只交给GC
+ * <p/>
+ * Created on 2026/10/18.
+ */
+
+public class BitmapMemoryCache {
+    // 默认使用最大可用堆内存的 1/8
+    private static final int DEFAULT_HEAP_FRACTION = 8;
+
+    private final LruCache<String, Bitmap> mLruCache;
+    private final BitmapPool mBitmapPool;
+    // 显示中的引用计数，弱引用的key，显示者没有释放就被丢弃时不会造成泄漏
+    private final Map<Bitmap, Refs> mRefs = new WeakHashMap<>();
+    // 内存紧张时主动淘汰的bitmap可能仍在屏幕上显示，不能放入复用池
+    private volatile boolean mTrimming;
+
+    public BitmapMemoryCache(BitmapPool bitmapPool) {
+        this((int) (Runtime.getRuntime().maxMemory() / DEFAULT_HEAP_FRACTION), bitmapPool);
+    }
+
+    /**
+     * @param maxBytes   缓存上限，单位字节
+     * @param bitmapPool 被淘汰的bitmap放入其中以供解码时复用，可为null
+     */
+    public BitmapMemoryCache(int maxBytes, BitmapPool bitmapPool) {
+        mBitmapPool = bitmapPool;
+        mLruCache = new LruCache<String, Bitmap>(maxBytes) {
+            @Override
+            protected int sizeOf(String key, Bitmap bitmap) {
+                return bitmap.getByteCount();
+            }
+
+            @Override
+            protected void entryRemoved(boolean evicted, String key, Bitmap oldValue, Bitmap newValue) {
+                // 只考虑因容量不足被淘汰的bitmap，是否放入复用池取决于它是否还在显示
+                if (evicted && !mTrimming) {
+                    onEvicted(oldValue);
+                }
+            }
+        };
+    }
+
+    /**
+     * 某个view 开始显示这个bitmap，在它释放之前bitmap 不会被复用
+     */
+    public synchronized void acquire(Bitmap bitmap) {
+        Refs refs = mRefs.get(bitmap);
+        if (refs == null) {
+            refs = new Refs();
+            mRefs.put(bitmap, refs);
+        }
+        refs.mCount++;
+    }
+
+    /**
+     * 查询并登记引用，两者之间不会被淘汰进复用池，供不经过{@link #get(String)} 之后立即显示的调用者使用
+     *
+     * @return 已登记引用的bitmap，未命中时返回null
+     */
+    public synchronized Bitmap acquire(String url) {
+        Bitmap bitmap = mLruCache.get(url);
+        if (bitmap != null) {
+            acquire(bitmap);
+        }
+        return bitmap;
+    }
+
+    /**
+     * view 不再显示这个bitmap；已被淘汰且没有其它显示者时放入复用池
+     */
+    public synchronized void release(Bitmap bitmap) {
+        Refs refs = mRefs.get(bitmap);
+        if (refs == null || refs.mCount == 0) {
+            return;
+        }
+        refs.mCount--;
+        refs.mShown = true;
+        if (refs.mCount == 0 && refs.mEvicted) {
+            mRefs.remove(bitmap);
+            recycle(bitmap);
+        }
+    }
+
+    private synchronized void onEvicted(Bitmap bitmap) {
+        Refs refs = mRefs.get(bitmap);
+        if (refs == null) {
+            // 从未显示过，例如预取后没有滑到或后台轮询加载的，不确定是否有人持有
+            return;
+        }
+        if (refs.mCount > 0) {
+            // 仍在屏幕上，等最后一个显示者释放
+            refs.mEvicted = true;
+        } else if (refs.mShown) {
+            mRefs.remove(bitmap);
+            recycle(bitmap);
+        }
+    }
+
+    private void recycle(Bitmap bitmap) {
+        if (mBitmapPool != null) {
+            mBitmapPool.put(bitmap);
+        }
+    }
+
+    private static class Refs {
+        int mCount;
+        // 曾经由view 显示并释放，确认没有其它持有者
+        boolean mShown;
+        boolean mEvicted;
+    }
+
+    public Bitmap get(String url) {
+        return mLruCache.get(url);
+    }
+
+    public void put(String url, Bitmap bitmap) {
+        if (url == null || bitmap == null) {
+            return;
+        }
+        mLruCache.put(url, bitmap);
+    }
+
+    /**
+     * @return 当前缓存的bitmap所占字节数
+     */
+    public int size() {
+        return mLruCache.size();
+    }
+
+    public int maxSize() {
+        return mLruCache.maxSize();
+    }
+
+    public void evictAll() {
+        mLruCache.evictAll();
+    }
+
+    /**
+     * 淘汰最久未使用的bitmap直到总字节数不超过maxBytes，容量上限不变，之后会重新增长
+     * 被淘汰的bitmap不进入复用池，只交给GC，之后显示者释放时也不再放入
+     *
+     * @param maxBytes 保留的字节数，-1 表示全部淘汰
+     */
+    public synchronized void trimToSize(int maxBytes) {
+        mTrimming = true;
+        try {
+            mLruCache.trimToSize(maxBytes);
+        } finally {
+            mTrimming = false;
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package info.kite.lost.android.photogallery.cache;
+
+import android.annotation.TargetApi;
+import android.graphics.Bitmap;
+import android.os.Build;
+
+import java.util.Iterator;
+import java.util.LinkedList;
+
+/**
+ * 可复用bitmap的对象池，解码时通过{@link android.graphics.BitmapFactory.Options#inBitmap} 复用其内存
+ * 避免滑动过程中反复分配大块内存引起的GC停顿
+ * <p/>
+ * API 19 以前要求被复用的bitmap与新图片尺寸完全一致，API 19 起只要求字节数足够
+ * <p/>
+ * Created on 2026/10/18.
+ */
+
+public class BitmapPool {
+    private static final String TAG = "BitmapPool";
+    // 默认上限 4MB，大约十几张缩略图
+    private static final int DEFAULT_MAX_BYTES = 4 * 1024 * 1024;
+
+    private final int mMaxBytes;
+    private int mSize;
+    // 最近放入的在队尾，超出上限时从队头淘汰
+    private final LinkedList<Bitmap> mBitmaps = new LinkedList<>();
+
+    public BitmapPool() {
+        this(DEFAULT_MAX_BYTES);
+    }
+
+    public BitmapPool(int maxBytes) {
+        mMaxBytes = maxBytes;
+    }
+
+    /**
+     * 放入一个不再被显示的bitmap，不可变或已回收的bitmap无法复用
+     */
+    public synchronized void put(Bitmap bitmap) {
+        if (bitmap == null || !bitmap.isMutable() || bitmap.isRecycled()) {
+            return;
+        }
+        int bytes = getAllocationByteCount(bitmap);
+        if (bytes > mMaxBytes) {
+            return;
+        }
+        mBitmaps.addLast(bitmap);
+        mSize += bytes;
+        while (mSize > mMaxBytes) {
+            mSize -= getAllocationByteCount(mBitmaps.removeFirst());
+        }
+    }
+
+    /**
+     * 取出一个能容纳指定尺寸的bitmap，取出后即从池中移除
+     *
+     * @param width  解码后的宽度（已考虑inSampleSize）
+     * @param height 解码后的高度（已考虑inSampleSize）
+     * @param config 解码使用的像素格式
+     * @return 可复用的bitmap，没有合适的返回null
+     */
+    public synchronized Bitmap get(int width, int height, Bitmap.Config config) {
+        Iterator<Bitmap> iterator = mBitmaps.iterator();
+        while (iterator.hasNext()) {
+            Bitmap candidate = iterator.next();
+            if (canReuse(candidate, width, height, config)) {
+                iterator.remove();
+                mSize -= getAllocationByteCount(candidate);
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+    public synchronized int size() {
+        return mSize;
+    }
+
+    public synchronized void clear() {
+        mBitmaps.clear();
+        mSize = 0;
+    }
+
+    /**
+     * 从最早放入的开始丢弃，直到总字节数不超过maxBytes
+     */
+    public synchronized void trimToSize(int maxBytes) {
+        while (mSize > maxBytes && !mBitmaps.isEmpty()) {
+            mSize -= getAllocationByteCount(mBitmaps.removeFirst());
+        }
+    }
+
+    private static boolean canReuse(Bitmap candidate, int width, int height, Bitmap.Config config) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            int byteCount = width * height * getBytesPerPixel(config);
+            return byteCount <= getAllocationByteCount(candidate);
+        }
+        return candidate.getWidth() == width
+                && candidate.getHeight() == height
+                && candidate.getConfig() == config;
+    }
+
+    private static int getBytesPerPixel(Bitmap.Config config) {
+        if (config == Bitmap.Config.ARGB_8888) {
+            return 4;
+        } else if (config == Bitmap.Config.RGB_565 || config == Bitmap.Config.ARGB_4444) {
+            return 2;
+        }
+        return 1;
+    }
+
+    @TargetApi(Build.VERSION_CODES.KITKAT)
+    static int getAllocationByteCount(Bitmap bitmap) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            return bitmap.getAllocationByteCount();
+        }
+        return bitmap.getByteCount();
+    }
+}
@@ -0,0 +1,220 @@
+package info.kite.lost.android.photogallery.cache;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.graphics.Bitmap;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 三级图片缓存：内存中解码后的bitmap + 打包保存的显示尺寸缩略图 + 磁盘上的原始文件
+ * 网络响应直接流式写入磁盘，解码器直接读取缓存文件，压缩数据不经过Java 堆
+ * 缩略图是解码后重新编码的小图，再次显示时只需一次小块读取和一次很快的解码
+ * 查询顺序为 内存 -> 缩略图 -> 磁盘 -> 网络，并记录各级的命中次数用于确认节省的流量
+ * <p/>
+ * Created on 2026/10/18.
+ */
+
+public class ImageCache {
+    private static final String TAG = "ImageCache";
+    private static final String DISK_CACHE_DIR = "thumbnails";
+    // 磁盘缓存上限 20MB
+    private static final long DISK_CACHE_SIZE = 20 * 1024 * 1024;
+    private static final String THUMBNAIL_PACK = "thumbnails.pack";
+    // 缩略图包上限 8MB，每张十几KB，足够保存几百个网格单元
+    private static final long THUMBNAIL_PACK_SIZE = 8 * 1024 * 1024;
+
+    private final BitmapMemoryCache mMemoryCache;
+    private final DiskCache mDiskCache;
+    private final PackStore mThumbnailStore;
+    private final BitmapPool mBitmapPool;
+
+    private final AtomicInteger mMemoryHitCount = new AtomicInteger();
+    private final AtomicInteger mThumbnailHitCount = new AtomicInteger();
+    private final AtomicInteger mDiskHitCount = new AtomicInteger();
+    private final AtomicInteger mMissCount = new AtomicInteger();
+
+    public ImageCache(Context context) {
+        this(new BitmapPool(), new DiskCache(new File(context.getCacheDir(), DISK_CACHE_DIR),
+                DISK_CACHE_SIZE), new PackStore(new File(context.getCacheDir(), THUMBNAIL_PACK),
+                THUMBNAIL_PACK_SIZE));
+    }
+
+    private ImageCache(BitmapPool bitmapPool, DiskCache diskCache, PackStore thumbnailStore) {
+        this(new BitmapMemoryCache(bitmapPool), diskCache, thumbnailStore, bitmapPool);
+    }
+
+    public ImageCache(BitmapMemoryCache memoryCache, DiskCache diskCache, PackStore thumbnailStore,
+                      BitmapPool bitmapPool) {
+        mMemoryCache = memoryCache;
+        mDiskCache = diskCache;
+        mThumbnailStore = thumbnailStore;
+        mBitmapPool = bitmapPool;
+    }
+
+    /**
+     * @return 从内存缓存中淘汰下来、可供解码复用的bitmap池
+     */
+    public BitmapPool getBitmapPool() {
+        return mBitmapPool;
+    }
+
+    /**
+     * 内存中是否已有这张图片，不计入命中统计，供预取判断是否需要加载
+     */
+    public boolean isInMemory(String url) {
+        return mMemoryCache.get(url) != null;
+    }
+
+    /**
+     * 查询缩略图包，涉及文件操作，只能在工作线程调用
+     * 未命中时不计入统计，调用者接着查询磁盘缓存
+     *
+     * @param key 包含url与显示尺寸的键，尺寸改变后不会命中旧尺寸的缩略图
+     * @return 重新编码的缩略图数据
+     */
+    public byte[] getThumbnail(String key) {
+        byte[] data = mThumbnailStore.get(key);
+        if (data != null) {
+            mThumbnailHitCount.incrementAndGet();
+        }
+        return data;
+    }
+
+    /**
+     * 追加到缩略图包，垃圾过多或超出上限时在调用线程上压实，只能在工作线程调用
+     */
+    public void putThumbnail(String key, byte[] data) {
+        mThumbnailStore.put(key, data);
+    }
+
+    /**
+     * 删除无法解码的缩略图，下次改从原始文件解码
+     */
+    public void removeThumbnail(String key) {
+        mThumbnailStore.remove(key);
+    }
+
+    /**
+     * 查询磁盘缓存，涉及文件操作，只能在工作线程调用
+     * 返回null即表示各级缓存都未命中，调用者需要访问网络
+     *
+     * @param url 资源链接
+     * @return 缓存文件
+     */
+    public File getFileFromDisk(String url) {
+        File file = mDiskCache.getFile(url);
+        if (file != null) {
+            mDiskHitCount.incrementAndGet();
+        } else {
+            mMissCount.incrementAndGet();
+        }
+        return file;
+    }
+
+    /**
+     * 按系统的内存压力等级缩减内存缓存与复用池，磁盘缓存不受影响
+     * 进程越可能被杀死，保留的越少；仍在前台运行时只缩减一部分以免滑动时大量重新解码
+     *
+     * @param level {@link ComponentCallbacks2} 中的TRIM_MEMORY_* 常量
+     * @return 释放的字节数（仍被ImageView 引用的bitmap 要等view 释放后才真正回收）
+     */
+    public long trimMemory(int level) {
+        int before = mMemoryCache.size() + mBitmapPool.size();
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_MODERATE
+                || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
+            // 进程排在被杀列表的中后段，或前台已经极度紧张
+            mMemoryCache.trimToSize(-1);
+            mBitmapPool.clear();
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN
+                || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            // 界面不可见或前台内存偏低，保留一半，返回画廊时最近看过的图片依然命中
+            mMemoryCache.trimToSize(mMemoryCache.size() / 2);
+            mBitmapPool.clear();
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE) {
+            mMemoryCache.trimToSize(mMemoryCache.size() * 3 / 4);
+            mBitmapPool.trimToSize(mBitmapPool.size() / 2);
+        }
+        return before - (mMemoryCache.size() + mBitmapPool.size());
+    }
+
+    /**
+     * 查询内存缓存并登记引用，用完后必须{@link #releaseBitmap(Bitmap)}
+     * 足够快，可以在UI线程调用；没有不登记引用的查询，取到的bitmap 在登记之前可能被淘汰进复用池
+     *
+     * @see BitmapMemoryCache#acquire(String)
+     */
+    public Bitmap acquireBitmapFromMemory(String url) {
+        Bitmap bitmap = mMemoryCache.acquire(url);
+        if (bitmap != null) {
+            mMemoryHitCount.incrementAndGet();
+        }
+        return bitmap;
+    }
+
+    /**
+     * @see BitmapMemoryCache#acquire(Bitmap)
+     */
+    public void acquireBitmap(Bitmap bitmap) {
+        mMemoryCache.acquire(bitmap);
+    }
+
+    /**
+     * @see BitmapMemoryCache#release(Bitmap)
+     */
+    public void releaseBitmap(Bitmap bitmap) {
+        mMemoryCache.release(bitmap);
+    }
+
+    public void putBitmapToMemory(String url, Bitmap bitmap) {
+        mMemoryCache.put(url, bitmap);
+    }
+
+    /**
+     * 把输入流直接写入磁盘缓存
+     *
+     * @param contentLength 已知的内容长度，未知时传-1
+     * @return 缓存文件，内容超出磁盘缓存的上限时返回null
+     * @throws IOException 读写失败
+     */
+    public File putStreamToDisk(String url, InputStream in, long contentLength) throws IOException {
+        return mDiskCache.put(url, in, contentLength);
+    }
+
+    public int getMemoryHitCount() {
+        return mMemoryHitCount.get();
+    }
+
+    public int getThumbnailHitCount() {
+        return mThumbnailHitCount.get();
+    }
+
+    public int getDiskHitCount() {
+        return mDiskHitCount.get();
+    }
+
+    /**
+     * @return 各级缓存都未命中、需要走网络的次数
+     */
+    public int getMissCount() {
+        return mMissCount.get();
+    }
+
+    @Override
+    public String toString() {
+        return "ImageCache{memoryHits=" + getMemoryHitCount()
+                + ", thumbnailHits=" + getThumbnailHitCount()
+                + ", diskHits=" + getDiskHitCount()
+                + ", misses=" + getMissCount()
+                + ", memory=" + mMemoryCache.size() + "/" + mMemoryCache.maxSize()
+                + ", thumbnails=" + mThumbnailStore.count() + " "
+                + mThumbnailStore.liveSize() + "/" + mThumbnailStore.size()
+                + "/" + mThumbnailStore.maxSize()
+                + ", disk=" + mDiskCache.size() + "/" + mDiskCache.maxSize()
+                + ", pool=" + mBitmapPool.size()
+                + "}";
+    }
+}
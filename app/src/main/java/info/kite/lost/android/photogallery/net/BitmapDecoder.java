@@ -0,0 +1,261 @@
+package info.kite.lost.android.photogallery.net;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Build;
+import android.util.Log;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.IOException;
+
+import info.kite.lost.android.photogallery.cache.BitmapPool;
+
+/**
+ * 按照目标显示尺寸解码图片
+ * 先只读取图片边界计算inSampleSize，再以采样后的尺寸真正解码，并尽可能复用{@link BitmapPool} 中的内存
+ * 缓存文件通过文件描述符解码，由native 代码直接读取，压缩数据不在Java 堆上
+ * 解码结果还可以缩放到显示尺寸后重新编码成WebP，再次显示时不必从原图采样解码
+ * <p/>
+ * Created on 2026/10/18.
+ */
+
+public class BitmapDecoder {
+    private static final String TAG = "BitmapDecoder";
+    private static final String MIME_JPEG = "image/jpeg";
+    // 计算平均颜色时每个方向上的采样点数
+    private static final int COLOR_SAMPLES = 5;
+    // 重新编码缩略图的WebP 质量，网格单元上看不出与原图的差别
+    private static final int THUMBNAIL_QUALITY = 80;
+    private static final int THUMBNAIL_BUFFER_SIZE = 32 * 1024;
+
+    private final BitmapPool mBitmapPool;
+    private volatile int mTargetWidth;
+    private volatile int mTargetHeight;
+    // JPEG 没有透明通道，用RGB_565 解码内存减半
+    private volatile boolean mPreferRgb565 = true;
+
+    public BitmapDecoder(BitmapPool bitmapPool) {
+        mBitmapPool = bitmapPool;
+    }
+
+    /**
+     * 设置目标尺寸，通常为一个网格单元的大小，小于等于0表示不采样
+     */
+    public void setTargetSize(int width, int height) {
+        mTargetWidth = width;
+        mTargetHeight = height;
+    }
+
+    public int getTargetWidth() {
+        return mTargetWidth;
+    }
+
+    public int getTargetHeight() {
+        return mTargetHeight;
+    }
+
+    public void setPreferRgb565(boolean preferRgb565) {
+        mPreferRgb565 = preferRgb565;
+    }
+
+    /**
+     * 压缩数据的来源，两次解码（边界与像素）都从头读取
+     */
+    private interface Source {
+        Bitmap decode(BitmapFactory.Options options);
+    }
+
+    /**
+     * @param data 压缩的图片数据
+     * @return 解码后的bitmap，数据无法解码时返回null
+     */
+    public Bitmap decode(final byte[] data) {
+        return decode(new Source() {
+            @Override
+            public Bitmap decode(BitmapFactory.Options options) {
+                return BitmapFactory.decodeByteArray(data, 0, data.length, options);
+            }
+        }, false);
+    }
+
+    /**
+     * 解码{@link #encodeThumbnail(Bitmap)} 的结果，数据已是显示尺寸，不再采样
+     *
+     * @param data 重新编码的缩略图
+     * @return 解码后的bitmap，数据无法解码时返回null
+     */
+    public Bitmap decodeThumbnail(final byte[] data) {
+        return decode(new Source() {
+            @Override
+            public Bitmap decode(BitmapFactory.Options options) {
+                return BitmapFactory.decodeByteArray(data, 0, data.length, options);
+            }
+        }, true);
+    }
+
+    /**
+     * 把解码结果缩放到刚好覆盖目标尺寸，再以WebP 重新编码
+     * 只处理不透明的bitmap：API 18 以前的WebP 编码会丢掉透明通道
+     * 调用时bitmap 还不能放入内存缓存，否则可能被淘汰进复用池后被其它解码覆盖
+     *
+     * @param bitmap 按目标尺寸采样解码的结果
+     * @return 编码后的数据，有透明通道、未设置目标尺寸或编码失败时返回null
+     */
+    public byte[] encodeThumbnail(Bitmap bitmap) {
+        int targetWidth = mTargetWidth;
+        int targetHeight = mTargetHeight;
+        if (bitmap.hasAlpha() || targetWidth <= 0 || targetHeight <= 0) {
+            return null;
+        }
+        int width = bitmap.getWidth();
+        int height = bitmap.getHeight();
+        // 采样后的图片最多是目标的两倍，缩到刚好覆盖目标，与centerCrop 显示的效果一致
+        float scale = Math.max((float) targetWidth / width, (float) targetHeight / height);
+        Bitmap scaled = bitmap;
+        if (scale < 1) {
+            scaled = Bitmap.createScaledBitmap(bitmap, Math.max(1, Math.round(width * scale)),
+                    Math.max(1, Math.round(height * scale)), true);
+        }
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(THUMBNAIL_BUFFER_SIZE);
+            if (!scaled.compress(Bitmap.CompressFormat.WEBP, THUMBNAIL_QUALITY, out)) {
+                return null;
+            }
+            return out.toByteArray();
+        } finally {
+            if (scaled != bitmap) {
+                scaled.recycle();
+            }
+        }
+    }
+
+    /**
+     * 直接从文件解码，decodeFileDescriptor() 不改变描述符的读取位置，同一个描述符可以解码两次
+     * 不使用内存映射：BitmapFactory 不接受ByteBuffer，映射的内容仍要复制进byte[]
+     *
+     * @param file 压缩的图片文件
+     * @return 解码后的bitmap，文件不存在（例如刚被淘汰）或无法解码时返回null
+     */
+    public Bitmap decode(File file) {
+        FileInputStream in;
+        try {
+            in = new FileInputStream(file);
+        } catch (IOException e) {
+            Log.w(TAG, "decode: " + file + " is gone");
+            return null;
+        }
+        try {
+            final FileDescriptor fd = in.getFD();
+            return decode(new Source() {
+                @Override
+                public Bitmap decode(BitmapFactory.Options options) {
+                    return BitmapFactory.decodeFileDescriptor(fd, null, options);
+                }
+            }, false);
+        } catch (IOException e) {
+            Log.w(TAG, "decode: ", e);
+            return null;
+        } finally {
+            try {
+                in.close();
+            } catch (IOException ignored) {
+                // 只读的文件，关闭失败没有影响
+            }
+        }
+    }
+
+    /**
+     * @param opaque 数据确定没有透明通道，可以解码成RGB_565
+     */
+    private Bitmap decode(Source source, boolean opaque) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        source.decode(options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            return null;
+        }
+
+        options.inSampleSize = calculateInSampleSize(options.outWidth, options.outHeight,
+                mTargetWidth, mTargetHeight);
+        boolean rgb565 = mPreferRgb565 && (opaque || MIME_JPEG.equals(options.outMimeType));
+        options.inPreferredConfig = rgb565 ? Bitmap.Config.RGB_565 : Bitmap.Config.ARGB_8888;
+        options.inJustDecodeBounds = false;
+        options.inMutable = true;
+        addInBitmap(options);
+
+        try {
+            return source.decode(options);
+        } catch (IllegalArgumentException e) {
+            // 复用的bitmap不满足要求，放弃复用重新解码
+            Log.w(TAG, "decode: inBitmap rejected", e);
+            options.inBitmap = null;
+            return source.decode(options);
+        }
+    }
+
+    /**
+     * 在图片上均匀取少量像素求平均，作为这张图的占位色，不分配新的bitmap
+     *
+     * @return 不透明的ARGB 颜色
+     */
+    public static int averageColor(Bitmap bitmap) {
+        int width = bitmap.getWidth();
+        int height = bitmap.getHeight();
+        int red = 0;
+        int green = 0;
+        int blue = 0;
+        for (int i = 0; i < COLOR_SAMPLES; i++) {
+            int y = (2 * i + 1) * height / (2 * COLOR_SAMPLES);
+            for (int j = 0; j < COLOR_SAMPLES; j++) {
+                int x = (2 * j + 1) * width / (2 * COLOR_SAMPLES);
+                int pixel = bitmap.getPixel(x, y);
+                red += (pixel >> 16) & 0xff;
+                green += (pixel >> 8) & 0xff;
+                blue += pixel & 0xff;
+            }
+        }
+        int count = COLOR_SAMPLES * COLOR_SAMPLES;
+        return 0xff000000 | (red / count) << 16 | (green / count) << 8 | (blue / count);
+    }
+
+    private void addInBitmap(BitmapFactory.Options options) {
+        // API 19 以前只支持 inSampleSize 为1 的复用
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.KITKAT && options.inSampleSize != 1) {
+            return;
+        }
+        int width = ceilDiv(options.outWidth, options.inSampleSize);
+        int height = ceilDiv(options.outHeight, options.inSampleSize);
+        Bitmap reusable = mBitmapPool.get(width, height, options.inPreferredConfig);
+        if (reusable != null) {
+            options.inBitmap = reusable;
+        }
+    }
+
+    /**
+     * 计算不小于目标尺寸的最大的2的幂采样率，解码后的图片依然能填满目标区域
+     *
+     * @param width        原图宽度
+     * @param height       原图高度
+     * @param targetWidth  目标宽度
+     * @param targetHeight 目标高度
+     * @return inSampleSize
+     */
+    static int calculateInSampleSize(int width, int height, int targetWidth, int targetHeight) {
+        if (targetWidth <= 0 || targetHeight <= 0) {
+            return 1;
+        }
+        int inSampleSize = 1;
+        while (width / (inSampleSize * 2) >= targetWidth
+                && height / (inSampleSize * 2) >= targetHeight) {
+            inSampleSize *= 2;
+        }
+        return inSampleSize;
+    }
+
+    private static int ceilDiv(int value, int divisor) {
+        return (value + divisor - 1) / divisor;
+    }
+}
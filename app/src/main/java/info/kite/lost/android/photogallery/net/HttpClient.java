@@ -0,0 +1,430 @@
+package info.kite.lost.android.photogallery.net;
+
+import android.content.Context;
+import android.net.http.HttpResponseCache;
+import android.os.CancellationSignal;
+import android.os.OperationCanceledException;
+import android.util.Log;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.HttpURLConnection;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.net.UnknownHostException;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+
+import info.kite.lost.android.photogallery.metrics.RequestTrace;
+import info.kite.lost.android.photogallery.metrics.ThumbnailMetrics;
+
+/**
+ * 所有网络请求的公共入口
+ * <ul>
+ * <li>不再主动disconnect()，读完并关闭输入流后连接回到系统的keep-alive 连接池，省去TCP 和TLS 握手</li>
+ * <li>JSON 等文本请求带上Accept-Encoding: gzip，自行解压</li>
+ * <li>安装{@link HttpResponseCache}，按照ETag/Last-Modified 自动发送条件请求，304 时直接使用缓存</li>
+ * <li>有Content-Length 时按其大小一次性分配缓冲区</li>
+ * <li>每个请求都有截止时间，到期时断开连接；连接失败、超时和5xx 在截止时间内按{@link RetryPolicy} 重试</li>
+ * </ul>
+ * Created on 2026/10/18.
+ */
+
+public class HttpClient {
+    private static final String TAG = "HttpClient";
+    private static final String HTTP_CACHE_DIR = "http";
+    // 只缓存JSON 响应，10MB 足够
+    private static final long HTTP_CACHE_SIZE = 10 * 1024 * 1024;
+    // 与下载线程池大小相当的keep-alive 连接数
+    private static final String MAX_CONNECTIONS = "8";
+    private static final int BUFFER_SIZE = 8 * 1024;
+    private static final String GZIP = "gzip";
+    // 单次连接与单次读取的超时，同时受截止时间限制
+    private static final int CONNECT_TIMEOUT_MILLIS = 10 * 1000;
+    private static final int READ_TIMEOUT_MILLIS = 15 * 1000;
+    // 未指定截止时间的请求从发起到读完响应体的总时限
+    public static final long DEFAULT_DEADLINE_MILLIS = 20 * 1000;
+
+    // 截止时间到期或请求被取消时断开连接，一个守护线程服务所有请求
+    private static final ScheduledThreadPoolExecutor sWatchdog =
+            new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, TAG + "-watchdog");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+    private final RetryPolicy mRetryPolicy = RetryPolicy.DEFAULT;
+    private final Random mRandom = new Random();
+
+    private static final HttpClient sHttpClient = new HttpClient();
+
+    public static HttpClient get() {
+        return sHttpClient;
+    }
+
+    private HttpClient() {
+    }
+
+    /**
+     * 安装响应缓存并设置连接池大小，可重复调用
+     *
+     * @param context context
+     */
+    public static synchronized void install(Context context) {
+        System.setProperty("http.keepAlive", "true");
+        System.setProperty("http.maxConnections", MAX_CONNECTIONS);
+        if (HttpResponseCache.getInstalled() != null) {
+            return;
+        }
+        File cacheDir = new File(context.getApplicationContext().getCacheDir(), HTTP_CACHE_DIR);
+        try {
+            HttpResponseCache.install(cacheDir, HTTP_CACHE_SIZE);
+        } catch (IOException e) {
+            Log.e(TAG, "install: http response cache unavailable", e);
+        }
+    }
+
+    /**
+     * 将响应缓存的索引写入磁盘，进程可能随时被杀，应在界面退出时调用
+     */
+    public static void flush() {
+        HttpResponseCache cache = HttpResponseCache.getInstalled();
+        if (cache != null) {
+            cache.flush();
+        }
+    }
+
+    /**
+     * 响应的状态码不是200，只有5xx、408 与429 值得重试
+     */
+    public static class StatusException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        private final int mStatusCode;
+
+        StatusException(int statusCode, String message) {
+            super(statusCode + " " + message);
+            mStatusCode = statusCode;
+        }
+
+        public int getStatusCode() {
+            return mStatusCode;
+        }
+    }
+
+    /**
+     * {@link BodyReader} 拒绝了响应体，例如图片超出磁盘缓存的上限，重试也不会改变结果
+     */
+    public static class RejectedException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        public RejectedException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * 一次请求的响应，使用完毕必须调用{@link #close()}，连接才能被复用
+     * 截止时间在关闭之前一直有效，读取响应体同样受它限制
+     */
+    public static class Response implements Closeable {
+        private final HttpURLConnection mConnection;
+        private final InputStream mInputStream;
+        private final boolean mGzipped;
+        private final CancellationSignal mSignal;
+        private final ScheduledFuture<?> mWatchdog;
+
+        Response(HttpURLConnection connection, InputStream inputStream, boolean gzipped,
+                 CancellationSignal signal, ScheduledFuture<?> watchdog) {
+            mConnection = connection;
+            mInputStream = inputStream;
+            mGzipped = gzipped;
+            mSignal = signal;
+            mWatchdog = watchdog;
+        }
+
+        /**
+         * @return 已解压的响应体
+         */
+        public InputStream getInputStream() {
+            return mInputStream;
+        }
+
+        /**
+         * @return 未压缩时为响应体的字节数，未知或经过压缩时为-1
+         */
+        public int getContentLength() {
+            return mGzipped ? -1 : mConnection.getContentLength();
+        }
+
+        /**
+         * 关闭输入流而不断开连接，底层socket 由系统连接池回收
+         */
+        @Override
+        public void close() {
+            // 先解除截止时间，避免断开已经回到连接池的连接
+            mWatchdog.cancel(false);
+            if (mSignal != null) {
+                mSignal.setOnCancelListener(null);
+            }
+            try {
+                mInputStream.close();
+            } catch (IOException ignored) {
+                // 流已经不可用，连接池会丢弃这个连接
+            }
+        }
+
+        /**
+         * 立即断开连接，用于取消请求
+         */
+        void abort() {
+            mConnection.disconnect();
+        }
+    }
+
+    /**
+     * 发起GET 请求
+     *
+     * @param urlSpec   资源链接
+     * @param useCaches 是否使用{@link HttpResponseCache}，已有自己磁盘缓存的图片应传false
+     * @param gzip      是否请求gzip 压缩，JPEG 等已压缩的内容应传false
+     * @return 响应，状态码不是200时抛出IOException
+     * @throws IOException
+     */
+    public Response open(String urlSpec, boolean useCaches, boolean gzip) throws IOException {
+        return open(urlSpec, useCaches, gzip, null);
+    }
+
+    /**
+     * 可被取消的{@link #open(String, boolean, boolean)}
+     * 从建立连接起直到{@link Response#close()}，取消都会立即断开连接，阻塞中的连接或读取随之失败
+     *
+     * @param signal 取消信号，可为null
+     * @throws OperationCanceledException 请求在得到响应前被取消
+     */
+    public Response open(String urlSpec, boolean useCaches, boolean gzip,
+                         CancellationSignal signal) throws IOException {
+        return open(urlSpec, useCaches, gzip, signal, Deadline.after(DEFAULT_DEADLINE_MILLIS));
+    }
+
+    /**
+     * 带截止时间的{@link #open(String, boolean, boolean, CancellationSignal)}
+     * 得到响应之前的失败在截止时间内重试，之后读取响应体时的失败由调用者处理
+     *
+     * @param deadline 截止时间，到期时断开连接并抛出SocketTimeoutException
+     */
+    public Response open(String urlSpec, boolean useCaches, boolean gzip,
+                         CancellationSignal signal, Deadline deadline) throws IOException {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return openOnce(urlSpec, useCaches, gzip, signal, deadline);
+            } catch (IOException e) {
+                retryOrThrow(e, attempt, signal, deadline);
+            }
+        }
+    }
+
+    private Response openOnce(String urlSpec, boolean useCaches, boolean gzip,
+                              CancellationSignal signal, Deadline deadline) throws IOException {
+        if (signal != null) {
+            signal.throwIfCanceled();
+        }
+        deadline.throwIfExpired();
+        final HttpURLConnection connection = (HttpURLConnection) new URL(urlSpec).openConnection();
+        connection.setUseCaches(useCaches);
+        connection.setConnectTimeout(deadline.timeoutMillis(CONNECT_TIMEOUT_MILLIS));
+        connection.setReadTimeout(deadline.timeoutMillis(READ_TIMEOUT_MILLIS));
+        if (gzip) {
+            // 手动设置后系统不再透明解压，由下面的GZIPInputStream 处理
+            connection.setRequestProperty("Accept-Encoding", GZIP);
+        }
+        final Runnable disconnect = new Runnable() {
+            @Override
+            public void run() {
+                connection.disconnect();
+            }
+        };
+        if (signal != null) {
+            // 已经取消时会立即回调；取消通常发生在主线程，disconnect() 要关闭socket，交给守护线程
+            signal.setOnCancelListener(new CancellationSignal.OnCancelListener() {
+                @Override
+                public void onCancel() {
+                    sWatchdog.execute(disconnect);
+                }
+            });
+        }
+        ScheduledFuture<?> watchdog = sWatchdog.schedule(disconnect, deadline.remainingMillis(),
+                TimeUnit.MILLISECONDS);
+        try {
+            int statusCode = connection.getResponseCode();
+            if (statusCode != HttpURLConnection.HTTP_OK) {
+                throw new StatusException(statusCode, connection.getResponseMessage() + ": with" + urlSpec);
+            }
+            InputStream in = connection.getInputStream();
+            boolean gzipped = GZIP.equalsIgnoreCase(connection.getContentEncoding());
+            if (gzipped) {
+                in = new GZIPInputStream(in, BUFFER_SIZE);
+            }
+            return new Response(connection, in, gzipped, signal, watchdog);
+        } catch (IOException e) {
+            watchdog.cancel(false);
+            // 出错的连接不能再复用
+            connection.disconnect();
+            if (signal != null) {
+                signal.setOnCancelListener(null);
+                // 断开连接导致的IOException 实际是取消
+                signal.throwIfCanceled();
+            }
+            throw timeoutIfExpired(e, deadline);
+        }
+    }
+
+    /**
+     * 截止时间到期断开连接导致的IOException 统一换成SocketTimeoutException
+     */
+    private static IOException timeoutIfExpired(IOException e, Deadline deadline) {
+        if (deadline.isExpired() && !(e instanceof SocketTimeoutException)) {
+            SocketTimeoutException timeout = new SocketTimeoutException("deadline exceeded");
+            timeout.initCause(e);
+            return timeout;
+        }
+        return e;
+    }
+
+    /**
+     * 可以重试时退避后返回，否则抛出e
+     * 退避会越过截止时间时不再重试
+     */
+    private void retryOrThrow(IOException e, int attempt, CancellationSignal signal,
+                              Deadline deadline) throws IOException {
+        if (attempt >= mRetryPolicy.getMaxAttempts() || !isRetriable(e)) {
+            throw e;
+        }
+        long delay = mRetryPolicy.backoffMillis(attempt, mRandom);
+        if (delay >= deadline.remainingMillis()) {
+            throw e;
+        }
+        Log.i(TAG, "retry #" + attempt + " in " + delay + "ms: " + e);
+        backoff(delay, signal);
+    }
+
+    /**
+     * 4xx 和被reader 拒绝的响应重试也不会成功，域名解析失败通常是没有网络
+     */
+    private static boolean isRetriable(IOException e) {
+        if (e instanceof RejectedException) {
+            return false;
+        }
+        if (e instanceof StatusException) {
+            int code = ((StatusException) e).getStatusCode();
+            return code >= 500 || code == HttpURLConnection.HTTP_CLIENT_TIMEOUT || code == 429;
+        }
+        return !(e instanceof UnknownHostException);
+    }
+
+    /**
+     * 等待一段时间，取消时立即结束
+     *
+     * @throws OperationCanceledException 等待期间被取消
+     */
+    private static void backoff(long millis, CancellationSignal signal) throws IOException {
+        final CountDownLatch canceled = new CountDownLatch(1);
+        if (signal != null) {
+            signal.setOnCancelListener(new CancellationSignal.OnCancelListener() {
+                @Override
+                public void onCancel() {
+                    canceled.countDown();
+                }
+            });
+        }
+        try {
+            canceled.await(millis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted during backoff");
+        } finally {
+            if (signal != null) {
+                signal.setOnCancelListener(null);
+            }
+        }
+        if (signal != null) {
+            signal.throwIfCanceled();
+        }
+    }
+
+    /**
+     * 读取响应体的方式，例如读成字节数组或直接写入文件
+     */
+    public interface BodyReader<T> {
+        /**
+         * @param in            已解压的响应体，由调用者关闭
+         * @param contentLength 未知时为-1
+         * @throws RejectedException 响应体不可接受，不再重试
+         */
+        T read(InputStream in, int contentLength) throws IOException;
+    }
+
+    /**
+     * 发起GET 请求并交给reader 读取响应体，连接或读取失败时在截止时间内整体重试
+     * reader 可能被调用多次，每次都应从头处理
+     *
+     * @param trace    请求的计时，可为null
+     * @param deadline 截止时间，到期时断开连接并抛出SocketTimeoutException
+     * @param reader   读取响应体
+     * @return reader 的结果
+     * @throws OperationCanceledException 请求在完成前被取消
+     */
+    public <T> T get(String urlSpec, boolean useCaches, CancellationSignal signal,
+                     RequestTrace trace, Deadline deadline, BodyReader<T> reader)
+            throws IOException {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return getOnce(urlSpec, useCaches, signal, trace, deadline, reader);
+            } catch (IOException e) {
+                retryOrThrow(e, attempt, signal, deadline);
+            }
+        }
+    }
+
+    private <T> T getOnce(String urlSpec, boolean useCaches, CancellationSignal signal,
+                          RequestTrace trace, Deadline deadline, BodyReader<T> reader)
+            throws IOException {
+        if (trace != null) {
+            trace.begin();
+        }
+        Response response = openOnce(urlSpec, useCaches, false, signal, deadline);
+        if (trace != null) {
+            trace.end(ThumbnailMetrics.Stage.CONNECT);
+        }
+        try {
+            T result = reader.read(response.getInputStream(), response.getContentLength());
+            if (signal != null) {
+                signal.throwIfCanceled();
+            }
+            if (trace != null) {
+                trace.end(ThumbnailMetrics.Stage.TRANSFER);
+            }
+            return result;
+        } catch (IOException e) {
+            // 断开连接导致的IOException 实际是取消
+            if (signal != null) {
+                signal.throwIfCanceled();
+            }
+            response.abort();
+            throw timeoutIfExpired(e, deadline);
+        } finally {
+            response.close();
+        }
+    }
+}
@@ -1,20 +1,17 @@
 package info.kite.lost.android.photogallery.net;
 
-import android.net.Uri;
+import android.os.CancellationSignal;
+import android.os.OperationCanceledException;
 import android.util.Log;
 
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
-
-import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
-import java.net.HttpURLConnection;
-import java.net.URL;
 import java.util.ArrayList;
 import java.util.List;
 
+import info.kite.lost.android.photogallery.cache.ImageCache;
+import info.kite.lost.android.photogallery.metrics.RequestTrace;
 import info.kite.lost.android.photogallery.model.GalleryItem;
 
 /**
@@ -25,148 +22,192 @@ import info.kite.lost.android.photogallery.model.GalleryItem;
 
 public class PhotoFetcher {
     private static final String TAG = "PhotoFetcher";
-    // 500px  的 consumer_key
-    private static final String CONSUMER_KEY = "Kku2bwsJRL4eMvKTZq1oJXjZeloWEB7WuBLMJ86r";
+    // 每页的照片数量，取列数的倍数使每页正好填满整行
+    public static final int PAGE_SIZE = 30;
+    // 详情页请求的尺寸编号，长边2048 像素，是api 提供的最大尺寸
+    public static final int FULL_IMAGE_SIZE = 2048;
+    // 大图可达数MB，给传输留出比默认更长的总时限
+    private static final long DOWNLOAD_DEADLINE_MILLIS = 60 * 1000;
 
     /**
-     * 根据传入的资源链接获取对应的资源的字节数组
-     * 一切网络服务的基础
+     * 把图片边读边写进磁盘缓存，完整的压缩数据不在Java 堆上出现，之后直接从文件解码
      *
-     * @param urlSpec 资源链接
-     * @return 字符数组
-     * @throws IOException
+     * @param urlSpec  资源链接
+     * @param cache    目标缓存
+     * @param signal   取消信号，可为null
+     * @param trace    记录连接与传输耗时，可为null
+     * @param deadline 截止时间，到期时抛出SocketTimeoutException
+     * @return 缓存文件
+     * @throws IOException                失败，或图片超出磁盘缓存的上限
+     * @throws OperationCanceledException 请求在完成前被取消
      */
-    public byte[] getUrlBytes(String urlSpec) throws IOException {
-        URL url = new URL(urlSpec);
-        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
-
-        try {
-            ByteArrayOutputStream out = new ByteArrayOutputStream();
-            InputStream in = connection.getInputStream();
-
-            if (connection.getResponseCode() != HttpURLConnection.HTTP_OK) {
-                throw new IOException(connection.getResponseMessage() + ": with" + urlSpec);
-            }
+    public File downloadToCache(final String urlSpec, final ImageCache cache,
+                                CancellationSignal signal, RequestTrace trace, Deadline deadline)
+            throws IOException {
+        return HttpClient.get().get(urlSpec, false, signal, trace, deadline,
+                new HttpClient.BodyReader<File>() {
+                    @Override
+                    public File read(InputStream in, int contentLength) throws IOException {
+                        File file = cache.putStreamToDisk(urlSpec, in, contentLength);
+                        if (file == null) {
+                            throw new HttpClient.RejectedException(
+                                    "too large for disk cache: " + urlSpec);
+                        }
+                        return file;
+                    }
+                });
+    }
 
-            int bytesRead;
-            byte[] buffer = new byte[1024];
-            while ((bytesRead = in.read(buffer)) > 0) {
-                out.write(buffer, 0, bytesRead);
-            }
+    /**
+     * 根据api获取最近流行的照片数据的第一页
+     *
+     * @return list of GalleryItem with a url
+     */
+    public List<GalleryItem> fetchPopularPhotos() {
+        return fetchPopularPhotos(1);
+    }
 
-            out.close();
-            return out.toByteArray();
-        } finally {
-            connection.disconnect();
-        }
+    /**
+     * 根据api获取最近流行的照片数据
+     *
+     * @param page 页码，从1开始
+     * @return list of GalleryItem with a url，超出最后一页时为空，请求失败时为null
+     */
+    public List<GalleryItem> fetchPopularPhotos(int page) {
+        return fetchPopularPhotos(page, null);
     }
 
     /**
-     * 获取getUrlBytes() 方法返回的字符数组对应的字符串
+     * 可被取消的{@link #fetchPopularPhotos(int)}
      *
-     * @param urlSpec 资源链接
-     * @return 字符串
-     * @throws IOException
+     * @param signal 取消信号，可为null，取消时连接立即断开
      */
-    public String getUrlString(String urlSpec) throws IOException {
-        return new String(getUrlBytes(urlSpec));
+    public List<GalleryItem> fetchPopularPhotos(int page, CancellationSignal signal) {
+        String url = PhotoUrls.popular(page, PAGE_SIZE);
+        return downloadGalleryItems(url, signal);
     }
 
     /**
-     * 根据api获取最近流行的照片数据
+     * 获取根据关键字搜索的照片数据的第一页
      *
      * @return list of GalleryItem with a url
      */
-    public List<GalleryItem> fetchPopularPhotos() {
-        String url = buildPopularUrl();
-        return downloadGalleryItems(url);
+    public List<GalleryItem> searchPhotos(String query) {
+        return searchPhotos(query, 1);
     }
 
     /**
      * 获取根据关键字搜索的照片数据
      *
-     * @return list of GalleryItem with a url
+     * @param page 页码，从1开始
+     * @return list of GalleryItem with a url，超出最后一页时为空，请求失败时为null
      */
-    public List<GalleryItem> searchPhotos(String query) {
-        String url = buildSearchUrl(query);
-        return downloadGalleryItems(url);
+    public List<GalleryItem> searchPhotos(String query, int page) {
+        return searchPhotos(query, page, null);
     }
 
     /**
-     * 根据传入的url访问网络获取照片信息集
+     * 可被取消的{@link #searchPhotos(String, int)}
      *
-     * @param url Uri of the photos
-     * @return list of {@link GalleryItem}
+     * @param signal 取消信号，可为null，取消时连接立即断开
      */
-    private List<GalleryItem> downloadGalleryItems(String url) {
-        List<GalleryItem> galleryItems = new ArrayList<>();
-        try {
-            String jsonString = getUrlString(url);
-            Log.i(TAG, "fetchItems: " + jsonString);
-            JSONObject jsonBody = new JSONObject(jsonString);
-            // 调用私有方法封装list
-            parseItems(galleryItems, jsonBody);
-        } catch (IOException | JSONException e) {
-            e.printStackTrace();
-            Log.e(TAG, "fetchItems: ", e);
-        }
-        return galleryItems;
+    public List<GalleryItem> searchPhotos(String query, int page, CancellationSignal signal) {
+        String url = PhotoUrls.search(query, page, PAGE_SIZE);
+        return downloadGalleryItems(url, signal);
     }
 
     /**
-     * 无参数构建Uri String的方法对应于获取流行图片
+     * 只获取排在最前面的少量照片，供后台轮询使用
      *
-     * @return string of the popular photos api
+     * @param query 关键词，null 表示流行照片
+     * @param count 需要的照片数量
+     * @return 按排序先后排列的照片，查询没有结果时为空，请求失败时为null
      */
-    private String buildPopularUrl() {
-        Uri.Builder urlBuilder = Uri.parse("https://api.500px.com/v1/photos?")
-                .buildUpon()
-                .appendQueryParameter("feature", "popular");
-        return packageUrl(urlBuilder);
+    public List<GalleryItem> fetchNewestItems(String query, int count) {
+        String url = query == null ? PhotoUrls.popular(1, count) : PhotoUrls.search(query, 1, count);
+        return downloadGalleryItems(url, null);
     }
 
     /**
-     * 无参数构建Uri String的方法对应于获取关键字搜索结果
+     * 获取单张照片的大尺寸版本的信息，列表接口只返回缩略图的地址
      *
-     * @return string of the search photos api
+     * @param id     照片id
+     * @param signal 取消信号，可为null
+     * @return url 指向大图的GalleryItem，失败时为null
      */
-    private String buildSearchUrl(String query) {
-        Uri.Builder urlBuilder = Uri.parse("https://api.500px.com/v1/photos/search?")
-                .buildUpon()
-                .appendQueryParameter("term", query);
-        return packageUrl(urlBuilder);
+    public GalleryItem fetchFullSizePhoto(String id, CancellationSignal signal) throws IOException {
+        HttpClient.Response response = HttpClient.get()
+                .open(PhotoUrls.photo(id, FULL_IMAGE_SIZE), true, true, signal);
+        try {
+            return new GalleryItemParser().parsePhoto(response.getInputStream());
+        } catch (IllegalStateException e) {
+            throw new IOException(e);
+        } finally {
+            response.close();
+        }
     }
 
-    private String packageUrl(Uri.Builder urlBuilder) {
-        return urlBuilder
-                .appendQueryParameter("sort", "rating")
-                .appendQueryParameter("image_size", "3")
-                .appendQueryParameter("consumer_key", CONSUMER_KEY)
-                .build().toString();
+    /**
+     * 把资源边读边写到文件，不在内存中保留完整内容，供解码超大图片使用
+     * 先写入临时文件，完整下载后才改名，中途失败或取消不会留下残缺的文件
+     *
+     * @param urlSpec 资源链接
+     * @param file    目标文件
+     * @param signal  取消信号，可为null
+     * @throws IOException
+     * @throws OperationCanceledException 请求在完成前被取消
+     */
+    public void downloadToFile(String urlSpec, File file, CancellationSignal signal)
+            throws IOException {
+        final File tmp = new File(file.getPath() + ".tmp");
+        try {
+            HttpClient.get().get(urlSpec, false, signal, null,
+                    Deadline.after(DOWNLOAD_DEADLINE_MILLIS), new HttpClient.BodyReader<Long>() {
+                        @Override
+                        public Long read(InputStream in, int contentLength) throws IOException {
+                            return ByteStreams.copyToFile(in, tmp, contentLength);
+                        }
+                    });
+            if (!tmp.renameTo(file)) {
+                throw new IOException("rename failed: " + file);
+            }
+        } catch (IOException | RuntimeException e) {
+            tmp.delete();
+            throw e;
+        }
     }
 
     /**
-     * 将包含一个item数组的JSONObject 的数据取出封装进传入的List中
+     * 根据传入的url访问网络获取照片信息集
+     * 响应体直接交给{@link GalleryItemParser} 边读边解析，不在内存中保留完整的JSON文本
+     * 请求经过HttpResponseCache，内容未变时服务器只返回304
      *
-     * @param items    list of GalleryItem
-     * @param jsonBody JSONObject
-     * @throws JSONException
+     * @param url    Uri of the photos
+     * @param signal 取消信号，可为null
+     * @return list of {@link GalleryItem}，被取消时为空，失败时为null，以便与真正的空结果区分
      */
-    private void parseItems(List<GalleryItem> items, JSONObject jsonBody) throws JSONException {
-        JSONArray photoJsonArray = jsonBody.getJSONArray("photos");
-        for (int i = 0; i < photoJsonArray.length(); i++) {
-            JSONObject photoJsonObject = photoJsonArray.getJSONObject(i);
-
-            GalleryItem item = new GalleryItem();
-            item.setId(photoJsonObject.getString("id"));
-            item.setCaption(photoJsonObject.getString("description"));
-
-            // 存在有的JSON数据源不含url的情况
-            if (!photoJsonObject.has("image_url")) {
-                continue;
+    private List<GalleryItem> downloadGalleryItems(String url, CancellationSignal signal) {
+        List<GalleryItem> galleryItems = new ArrayList<>();
+        try {
+            HttpClient.Response response = HttpClient.get().open(url, true, true, signal);
+            try {
+                new GalleryItemParser().parse(response.getInputStream(), galleryItems);
+            } finally {
+                response.close();
+            }
+            Log.i(TAG, "fetchItems: " + galleryItems.size() + " items");
+        } catch (IOException | IllegalStateException e) {
+            if (signal != null && signal.isCanceled()) {
+                // 断开连接导致的读取失败
+                galleryItems.clear();
+            } else {
+                // gson 遇到不符合预期的结构时抛出IllegalStateException
+                Log.e(TAG, "fetchItems: ", e);
+                return null;
             }
-            item.setUrl(photoJsonObject.getString("image_url"));
-            items.add(item);
+        } catch (OperationCanceledException e) {
+            Log.i(TAG, "fetchItems: canceled " + url);
         }
+        return galleryItems;
     }
 }
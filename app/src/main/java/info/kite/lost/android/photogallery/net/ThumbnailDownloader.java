@@ -1,39 +1,130 @@
 package info.kite.lost.android.photogallery.net;
 
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
+import android.net.Uri;
+import android.os.CancellationSignal;
 import android.os.Handler;
-import android.os.HandlerThread;
-import android.os.Message;
+import android.os.OperationCanceledException;
+import android.os.Process;
+import android.os.SystemClock;
 import android.util.Log;
 
+import java.io.File;
 import java.io.IOException;
+import java.io.PrintWriter;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import info.kite.lost.android.photogallery.BuildConfig;
+import info.kite.lost.android.photogallery.cache.ImageCache;
+import info.kite.lost.android.photogallery.metrics.Histogram;
+import info.kite.lost.android.photogallery.metrics.RequestTrace;
+import info.kite.lost.android.photogallery.metrics.ThumbnailMetrics;
 
 /**
+ * 缩略图下载器，网络请求与解码分别在两个有界线程池中并行执行
+ * 网络线程池负责IO，解码线程池负责CPU密集的BitmapFactory解码，同一host的并发请求数受限
+ * 两个线程池都是后进先出，快速滑动时最后绑定（即当前可见）的holder最先被处理
+ * 同一url同时只有一个加载，之后请求它的holder只是加入等待列表
+ * 另有一个最低优先级的单线程预取队列，在可见请求空闲时为即将滑入屏幕的位置预热缓存
+ * 每次下载都有截止时间；开启对冲时，可见请求超过观测到的p95 仍未完成就再发一个相同的请求，先完成的胜出
+ * 响应体直接写入磁盘缓存文件，解码线程从文件解码，压缩数据不经过Java 堆
+ * 解码结果按显示尺寸重新编码存入缩略图包，之后冷启动显示同一张图时不再从原图采样解码
+ * <p/>
  * Created on 2016/10/18.
  */
 
-public class ThumbnailDownloader<T> extends HandlerThread {
+public class ThumbnailDownloader<T> {
     private static final String TAG = "ThumbnailDownloader";
-    // message 的标志，what of message，一个应用中的what设置为不同为宜
-    private static final int MESSAGE_DOWNLOAD = 0;
-    // target of message，负责将 下载请求 封转成message有序地投入到下载进程中
-    // 同时也负责消费掉looper从queue中取出的相关message
-    private Handler mBitmapDownloadHandler;
+    // 默认网络并发数，受带宽限制，过多反而会互相抢占
+    public static final int DEFAULT_NETWORK_THREADS = 4;
+    // 默认解码并发数，与CPU核数一致
+    public static final int DEFAULT_DECODE_THREADS =
+            Math.max(1, Runtime.getRuntime().availableProcessors());
+    // 默认同一host的最大并发连接数
+    public static final int DEFAULT_MAX_REQUESTS_PER_HOST = 4;
+    // 每批预取最多从网络下载的字节数，计流量的网络上应调小
+    public static final long DEFAULT_PREFETCH_BUDGET = 1024 * 1024;
+    // 空闲线程的存活时间
+    private static final long KEEP_ALIVE_SECONDS = 30;
+    // 一张缩略图从等待host 许可到读完响应体的总时限
+    private static final long FETCH_DEADLINE_MILLIS = 15 * 1000;
+    // 对冲请求的线程数，同时也是额外并发请求数的上限
+    private static final int HEDGE_THREADS = 2;
+    // 在这个百分位的耗时之后发出对冲请求，额外的流量约为5%
+    private static final double HEDGE_PERCENTILE = 95;
+    // 样本太少时p95 不可信，先不对冲
+    private static final int MIN_HEDGE_SAMPLES = 20;
+    private static final long MIN_HEDGE_DELAY_MILLIS = 50;
+    private static final long NANOS_PER_MILLI = 1000000;
+
     // 线程安全的HashMap，存放identity 和 urlString
     private ConcurrentMap<T, String> mRequestMap = new ConcurrentHashMap<>();
+    // 以url为键的进行中的加载，绑定同一url的holder共用一次下载和一次解码
+    private ConcurrentMap<String, UrlLoad> mUrlLoads = new ConcurrentHashMap<>();
+    // 每个host一个信号量，限制对同一host的并发连接
+    private ConcurrentMap<String, Semaphore> mHostPermits = new ConcurrentHashMap<>();
+    private final int mMaxRequestsPerHost;
+
+    // 下载与解码的线程池
+    private final ThreadPoolExecutor mNetworkExecutor;
+    private final ThreadPoolExecutor mDecodeExecutor;
+    // 预取线程池，只有一个最低优先级的线程，按距离由近到远的顺序执行
+    private final ThreadPoolExecutor mPrefetchExecutor;
+    // 延迟发出并执行对冲请求
+    private final ScheduledThreadPoolExecutor mHedgeExecutor;
+
+    // 网络下载的耗时（纳秒），不含等待host 许可，对冲的延迟取它的p95
+    private final Histogram mFetchLatency = new Histogram();
+    // 对冲会增加流量，只在不计流量的网络上开启
+    private volatile boolean mHedging;
+    private final AtomicInteger mHedgesSent = new AtomicInteger();
+    private final AtomicInteger mHedgesWon = new AtomicInteger();
+
+    // 每次发起新一批预取时加一，旧批次中尚未执行的任务据此丢弃
+    private final AtomicInteger mPrefetchGeneration = new AtomicInteger();
+    // 当前批次剩余可下载的字节数
+    private final AtomicLong mPrefetchRemaining = new AtomicLong();
+    private volatile long mPrefetchBudget = DEFAULT_PREFETCH_BUDGET;
+    // 预取的取消信号，清空队列时断开正在进行的预取下载
+    private volatile CancellationSignal mPrefetchSignal = new CancellationSignal();
+    // 内存紧张时暂停预取，在此时刻（elapsedRealtime）之前不接受新的批次
+    private volatile long mPrefetchPausedUntil;
 
     // UI 进程中的handler，用来将bitmap传入holder
     private Handler mUIResponseHandler;
     // 回调接口,
     private ThumbnailDownloadListener<T> mThumbnailDownloadListener;
+    // 每解码一张新的缩略图回调一次它的平均颜色，可为null
+    private volatile ColorListener mColorListener;
+    // 内存 + 磁盘两级缓存，命中时不再访问网络
+    private ImageCache mImageCache;
+    // 按网格尺寸采样解码
+    private final BitmapDecoder mBitmapDecoder;
+    // 各阶段耗时与队列深度
+    private final ThumbnailMetrics mMetrics = new ThumbnailMetrics();
 
     /**
      * 监听回调接口，代表了处理下载完成的image的职责，提升代码复用性
      * 在bitmap下载完毕后被调用其中的onThumbnailDownloaded()方法
      * 由调用ThumbnailDownloader的类实现
+     * 交出的bitmap 已在内存缓存中登记了一次引用，监听者不再显示它时调用{@link ImageCache#releaseBitmap(Bitmap)}
      *
      * @param <T> 由downloader引用的UI Thread参数
      */
@@ -41,6 +132,17 @@ public class ThumbnailDownloader<T> extends HandlerThread {
         void onThumbnailDownloaded(T identity, Bitmap bitmap);
     }
 
+    /**
+     * 解码出新的缩略图时回调其平均颜色，运行在工作线程
+     */
+    public interface ColorListener {
+        void onColorExtracted(String url, int color);
+    }
+
+    public void setColorListener(ColorListener listener) {
+        mColorListener = listener;
+    }
+
     /**
      * 设置回调借口
      * @param listener 实现了{@link ThumbnailDownloadListener}接口的类
@@ -49,92 +151,760 @@ public class ThumbnailDownloader<T> extends HandlerThread {
         mThumbnailDownloadListener = listener;
     }
 
-    public ThumbnailDownloader(Handler responseHandler) {
-        super(TAG);
+    public ThumbnailDownloader(Handler responseHandler, ImageCache imageCache) {
+        this(responseHandler, imageCache, DEFAULT_NETWORK_THREADS, DEFAULT_DECODE_THREADS,
+                DEFAULT_MAX_REQUESTS_PER_HOST);
+    }
+
+    /**
+     * @param responseHandler    UI线程的handler
+     * @param imageCache         两级缓存
+     * @param networkThreads     网络线程池大小
+     * @param decodeThreads      解码线程池大小
+     * @param maxRequestsPerHost 同一host的最大并发请求数
+     */
+    public ThumbnailDownloader(Handler responseHandler, ImageCache imageCache,
+                               int networkThreads, int decodeThreads, int maxRequestsPerHost) {
         mUIResponseHandler = responseHandler;
+        mImageCache = imageCache;
+        mBitmapDecoder = new BitmapDecoder(imageCache.getBitmapPool());
+        mMaxRequestsPerHost = maxRequestsPerHost;
+        mNetworkExecutor = newExecutor(networkThreads, new LifoBlockingDeque<Runnable>(),
+                new BackgroundThreadFactory(TAG + "-net", Process.THREAD_PRIORITY_BACKGROUND));
+        mDecodeExecutor = newExecutor(decodeThreads, new LifoBlockingDeque<Runnable>(),
+                new BackgroundThreadFactory(TAG + "-decode", Process.THREAD_PRIORITY_BACKGROUND));
+        mPrefetchExecutor = newExecutor(1, new LinkedBlockingQueue<Runnable>(),
+                new BackgroundThreadFactory(TAG + "-prefetch", Process.THREAD_PRIORITY_LOWEST));
+        mHedgeExecutor = new ScheduledThreadPoolExecutor(HEDGE_THREADS,
+                new BackgroundThreadFactory(TAG + "-hedge", Process.THREAD_PRIORITY_BACKGROUND));
     }
 
     /**
-     * 在{@link android.os.Looper} 第一次检查queue之前被调用
-     * 适合在此实现{@link HandlerThread} 中的handler
+     * 核心线程数等于最大线程数，并允许核心线程超时，既保证有界又不在空闲时占用线程
      */
-    @Override
-    protected void onLooperPrepared() {
-        // 初始化mHandler
-        mBitmapDownloadHandler = new Handler(){
-            @Override
-            public void handleMessage(Message msg) {
-                if (msg.what == MESSAGE_DOWNLOAD) {
-                    T target = (T) msg.obj;
-                    Log.i(TAG, "onLooperPrepared handleMessage: " + mRequestMap.get(target));
-                    handleBitmapDownload(target);
-                }
-            }
-        };
+    private static ThreadPoolExecutor newExecutor(int threads, BlockingQueue<Runnable> queue,
+                                                  ThreadFactory threadFactory) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads,
+                KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, queue, threadFactory);
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    public ImageCache getImageCache() {
+        return mImageCache;
+    }
+
+    public ThumbnailMetrics getMetrics() {
+        return mMetrics;
+    }
+
+    /**
+     * 输出各阶段耗时、队列深度和缓存命中率，供dumpsys 调用
+     */
+    public void dump(String prefix, PrintWriter writer) {
+        mMetrics.dump(prefix, writer);
+        int memoryHits = mImageCache.getMemoryHitCount();
+        int thumbnailHits = mImageCache.getThumbnailHitCount();
+        int diskHits = mImageCache.getDiskHitCount();
+        int total = memoryHits + thumbnailHits + diskHits + mImageCache.getMissCount();
+        writer.print(prefix);
+        writer.println("cache hit ratio: memory=" + percent(memoryHits, total)
+                + " thumbnail=" + percent(thumbnailHits, total)
+                + " disk=" + percent(diskHits, total) + " " + mImageCache);
+        writer.print(prefix);
+        writer.println("queued: network=" + mNetworkExecutor.getQueue().size()
+                + " decode=" + mDecodeExecutor.getQueue().size()
+                + " prefetch=" + mPrefetchExecutor.getQueue().size());
+        writer.print(prefix);
+        long delay = hedgeDelayMillis();
+        writer.println("hedging: " + (mHedging ? "on" : "off")
+                + " delay=" + (delay < 0 ? "-" : delay + "ms")
+                + " sent=" + mHedgesSent.get() + " won=" + mHedgesWon.get());
+    }
+
+    private static String percent(int count, int total) {
+        return total == 0 ? "-" : (count * 100 / total) + "%";
+    }
+
+    /**
+     * 设置缩略图的显示尺寸，解码时据此计算采样率，避免为小格子解码全尺寸图片
+     *
+     * @param width  像素宽度
+     * @param height 像素高度
+     */
+    public void setTargetSize(int width, int height) {
+        mBitmapDecoder.setTargetSize(width, height);
     }
 
     /**
-     * 将identity 和 urlString存入线程安全的map中，再将identity作为message传给handler对应的Message Queue
+     * 将identity 和 urlString存入线程安全的map中，再将下载任务提交给网络线程池
+     * 内存缓存命中时直接在调用线程（UI线程）回调，不再入队
+     * 同一url已在加载时只登记等待，不再重复下载；只在UI线程调用
+     * holder被回收或改绑新url时退出之前的等待，等待者全部退出的加载会被立即取消
      *
      * @param identity 专一的view与专一的URL对应，避免了photo显示错误的问题，同时也区分出不同的子线程
      * @param url 照片url
      */
     public void queueThumbnail(T identity, String url) {
-        Log.i(TAG, "queueThumbnail: " + identity + url);
+        if (BuildConfig.DEBUG) {
+            Log.i(TAG, "queueThumbnail: " + identity + url);
+        }
 
         if (url == null) {
             // url 为空表示ViewHolder被回收，故而remove
-            mRequestMap.remove(identity);
-        } else {
-            mRequestMap.put(identity, url);
-            // 此处obtainMessage 从一个recycler pool中生成message，其target就是mRequestHandler
-            // 在这个app中，一个Message代表了T identity的一个下载请求
-            // message.sentToTarget()发送msg 给目标Handler从属的Looper管理的MessageQueue
-            // identity 在此是msg的obj，此处没有将urlString传过去因为可以从map中取出
-            mBitmapDownloadHandler.obtainMessage(MESSAGE_DOWNLOAD, identity).sendToTarget();
+            detach(identity, mRequestMap.remove(identity));
+            return;
+        }
+
+        // 查询与登记引用一起完成，交给监听者之前不会被淘汰进复用池
+        Bitmap cached = mImageCache.acquireBitmapFromMemory(url);
+        if (cached != null) {
+            // 之前为这个holder排队的旧请求也不再需要
+            detach(identity, mRequestMap.remove(identity));
+            mThumbnailDownloadListener.onThumbnailDownloaded(identity, cached);
+            return;
         }
+
+        String previous = mRequestMap.put(identity, url);
+        if (!url.equals(previous)) {
+            detach(identity, previous);
+        }
+
+        UrlLoad load = mUrlLoads.get(url);
+        if (load != null && load.addWaiter(identity)) {
+            return;
+        }
+        load = new UrlLoad(url, identity);
+        // 上面取到的加载可能刚刚结束，直接替换
+        mUrlLoads.put(url, load);
+        mNetworkExecutor.execute(new FetchTask(load));
+        mMetrics.recordQueueDepth(mNetworkExecutor.getQueue().size());
     }
 
     /**
-     * MessageQueue清理，在Fragment或activity被重建时保证信息不紊乱
+     * holder不再等待url，最后一个等待者离开时取消整个加载
      */
-    public void clearQueue() {
-        // 清楚了queue，后续task会被终止
-        mBitmapDownloadHandler.removeMessages(MESSAGE_DOWNLOAD);
+    private void detach(T identity, String url) {
+        if (url == null) {
+            return;
+        }
+        UrlLoad load = mUrlLoads.get(url);
+        if (load != null && load.removeWaiter(identity)) {
+            mUrlLoads.remove(url, load);
+        }
+    }
+
+    /**
+     * 开启或关闭可见请求的对冲，对冲请求重复下载同一张图片，计流量的网络上应关闭
+     */
+    public void setHedging(boolean hedging) {
+        mHedging = hedging;
+    }
+
+    /**
+     * @return 对冲请求的延迟，样本不足时为-1
+     */
+    private long hedgeDelayMillis() {
+        if (mFetchLatency.getCount() < MIN_HEDGE_SAMPLES) {
+            return -1;
+        }
+        return Math.max(MIN_HEDGE_DELAY_MILLIS,
+                mFetchLatency.getPercentile(HEDGE_PERCENTILE) / NANOS_PER_MILLI);
+    }
+
+    /**
+     * 设置每批预取的流量预算，计流量的网络上应传入较小的值，传0 则只从磁盘预热
+     *
+     * @param bytes 字节数
+     */
+    public void setPrefetchBudget(long bytes) {
+        mPrefetchBudget = bytes;
     }
 
     /**
-     * 根据identity 从map中取出urlString，再以url下载得到bitmap
-     * @param identity T，key of mRequestMap{@link ConcurrentHashMap}
+     * 为即将显示的url预热内存缓存，取代之前尚未完成的预取
+     * 预取在可见请求之后执行，且每批从网络下载的字节数不超过预算
+     *
+     * @param urls 按与当前可见区域的距离由近到远排列
      */
-    private void handleBitmapDownload(final T identity) {
+    public void prefetch(List<String> urls) {
+        if (SystemClock.elapsedRealtime() < mPrefetchPausedUntil) {
+            return;
+        }
+        int generation = mPrefetchGeneration.incrementAndGet();
+        // 正在进行的那一次下载不取消，新批次多半也需要它
+        mPrefetchExecutor.getQueue().clear();
+        mPrefetchRemaining.set(mPrefetchBudget);
         try {
-            final String url = mRequestMap.get(identity);
-            if (url == null) {
+            for (String url : urls) {
+                // 正在加载的url不必预取
+                if (url != null && !mImageCache.isInMemory(url) && !mUrlLoads.containsKey(url)) {
+                    mPrefetchExecutor.execute(new PrefetchTask(url, generation, mPrefetchSignal));
+                }
+            }
+        } catch (RejectedExecutionException e) {
+            Log.i(TAG, "prefetch: downloader already shut down");
+        }
+    }
+
+    /**
+     * 在一段时间内暂停预取并取消当前批次，内存紧张时预取的bitmap 多半会立即被淘汰
+     * 系统不会通知压力解除，重复收到回调时暂停时间随之顺延
+     *
+     * @param millis 暂停时长
+     */
+    public void pausePrefetch(long millis) {
+        mPrefetchPausedUntil = SystemClock.elapsedRealtime() + millis;
+        cancelPrefetch();
+    }
+
+    private void cancelPrefetch() {
+        mPrefetchGeneration.incrementAndGet();
+        mPrefetchExecutor.getQueue().clear();
+        mPrefetchSignal.cancel();
+        mPrefetchSignal = new CancellationSignal();
+    }
+
+    /**
+     * 请求是否仍然有效，即holder 依然绑定着这个url
+     */
+    private boolean isCurrent(T identity, String url) {
+        return url.equals(mRequestMap.get(identity));
+    }
+
+    /**
+     * 在调用线程中同步加载一张图片，不经过线程池，供后台轮询等没有holder 的场景使用
+     * 按调用者给出的尺寸解码，与网格的目标尺寸无关：轮询可能运行在刚启动、还没有界面的进程中
+     * 下载的原始文件写入磁盘缓存，之后打开画廊时不必再下载；
+     * 解码结果不是网格尺寸，不放入内存缓存和缩略图包
+     *
+     * @param url      照片url
+     * @param width    目标宽度
+     * @param height   目标高度
+     * @param deadline 截止时间，到期前没有开始解码就放弃
+     * @return bitmap，失败或超时时为null；用完后调用{@link ImageCache#releaseBitmap(Bitmap)}
+     */
+    public Bitmap getBitmapBlocking(String url, int width, int height, Deadline deadline) {
+        // 网格的图片不小于单元格，用作图标或预览已经足够；登记引用，调用者用完之前不会被复用
+        Bitmap bitmap = mImageCache.acquireBitmapFromMemory(url);
+        if (bitmap != null) {
+            return bitmap;
+        }
+        try {
+            File file = mImageCache.getFileFromDisk(url);
+            if (file == null) {
+                file = fetchWithHostLimit(url, new CancellationSignal(), null, deadline, false);
+            }
+            // 文件已在磁盘缓存中，超时后不再占用调用者的时间解码
+            deadline.throwIfExpired();
+            BitmapDecoder decoder = new BitmapDecoder(mImageCache.getBitmapPool());
+            decoder.setTargetSize(width, height);
+            return decoder.decode(file);
+        } catch (IOException e) {
+            Log.e(TAG, "getBitmapBlocking: ", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return null;
+    }
+
+    /**
+     * 清空尚未开始的下载与解码任务并取消正在进行的下载
+     * 进程级的加载器不需要在界面销毁时调用，各个holder 的请求随view 分离自动释放
+     */
+    public void clearQueue() {
+        mNetworkExecutor.getQueue().clear();
+        mDecodeExecutor.getQueue().clear();
+        cancelPrefetch();
+        for (UrlLoad load : mUrlLoads.values()) {
+            load.cancel();
+        }
+        mUrlLoads.clear();
+    }
+
+    /**
+     * 终止所有线程，调用后不能再提交请求
+     */
+    public void quit() {
+        clearQueue();
+        mNetworkExecutor.shutdownNow();
+        mDecodeExecutor.shutdownNow();
+        mPrefetchExecutor.shutdownNow();
+        mHedgeExecutor.shutdownNow();
+        mRequestMap.clear();
+    }
+
+    /**
+     * 同一url的一次加载：一次下载、一次解码，结果交给所有仍绑定着这个url的holder
+     * 等待列表只在UI线程增减，工作线程只在结束时取走，用对象锁保护
+     */
+    private class UrlLoad {
+        private final String mUrl;
+        private final List<T> mWaiters = new ArrayList<>(1);
+        private final CancellationSignal mSignal = new CancellationSignal();
+        private final RequestTrace mTrace = new RequestTrace(mMetrics);
+        // 已结束或已取消，不再接受新的等待者
+        private boolean mDone;
+
+        UrlLoad(String url, T firstWaiter) {
+            mUrl = url;
+            mWaiters.add(firstWaiter);
+        }
+
+        /**
+         * 同一个holder重复绑定同一url时不会重复登记
+         *
+         * @return false 表示加载已经结束，调用者需要发起新的加载
+         */
+        synchronized boolean addWaiter(T identity) {
+            if (mDone) {
+                return false;
+            }
+            if (!mWaiters.contains(identity)) {
+                mWaiters.add(identity);
+            }
+            return true;
+        }
+
+        /**
+         * @return true 表示这是最后一个等待者，加载已被取消
+         */
+        synchronized boolean removeWaiter(T identity) {
+            if (mDone || !mWaiters.remove(identity) || !mWaiters.isEmpty()) {
+                return false;
+            }
+            mDone = true;
+            mSignal.cancel();
+            return true;
+        }
+
+        synchronized void cancel() {
+            mDone = true;
+            mSignal.cancel();
+        }
+
+        /**
+         * 是否还有holder绑定着这个url
+         */
+        synchronized boolean isWanted() {
+            if (mDone) {
+                return false;
+            }
+            for (T identity : mWaiters) {
+                if (isCurrent(identity, mUrl)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * 从注册表中移除并取走等待者，之后请求这个url的holder会命中内存缓存或发起新的加载
+         */
+        List<T> finish() {
+            mUrlLoads.remove(mUrl, this);
+            synchronized (this) {
+                mDone = true;
+                return new ArrayList<>(mWaiters);
+            }
+        }
+    }
+
+    /**
+     * 网络阶段：依次查询缩略图包、磁盘缓存和网络，交给解码线程池
+     * 执行前等待的holder都已被回收或改绑时直接丢弃
+     */
+    private class FetchTask implements Runnable {
+        private final UrlLoad mLoad;
+
+        FetchTask(UrlLoad load) {
+            mLoad = load;
+        }
+
+        @Override
+        public void run() {
+            RequestTrace trace = mLoad.mTrace;
+            String url = mLoad.mUrl;
+            trace.end(ThumbnailMetrics.Stage.QUEUE_WAIT);
+            boolean handedOff = false;
+            try {
+                if (!mLoad.isWanted()) {
+                    return;
+                }
+                // 排队期间可能预取或其它加载已把它放入了内存缓存
+                Bitmap bitmap = mImageCache.acquireBitmapFromMemory(url);
+                if (bitmap != null) {
+                    handedOff = true;
+                    deliver(mLoad, bitmap);
+                    return;
+                }
+                trace.begin();
+                byte[] thumbnail = mImageCache.getThumbnail(thumbnailKey(url));
+                if (thumbnail != null) {
+                    trace.end(ThumbnailMetrics.Stage.DISK_READ);
+                    mDecodeExecutor.execute(new DecodeTask(mLoad, null, thumbnail));
+                    handedOff = true;
+                    return;
+                }
+                File file = mImageCache.getFileFromDisk(url);
+                if (file != null) {
+                    trace.end(ThumbnailMetrics.Stage.DISK_READ);
+                } else {
+                    file = fetchWithHostLimit(url, mLoad.mSignal, trace,
+                            Deadline.after(FETCH_DEADLINE_MILLIS), true);
+                }
+                mDecodeExecutor.execute(new DecodeTask(mLoad, file, null));
+                handedOff = true;
+            } catch (OperationCanceledException e) {
+                if (BuildConfig.DEBUG) {
+                    Log.i(TAG, "FetchTask: canceled " + url);
+                }
+            } catch (IOException e) {
+                Log.e(TAG, "FetchTask: ", e);
+            } catch (InterruptedException e) {
+                // quit() 时线程被中断
+                Thread.currentThread().interrupt();
+            } catch (RejectedExecutionException e) {
+                // quit() 之后解码线程池已关闭，丢弃结果即可
+                Log.i(TAG, "FetchTask: decoder already shut down");
+            } finally {
+                if (!handedOff) {
+                    mLoad.finish();
+                }
+            }
+        }
+    }
+
+    /**
+     * 解码阶段：将缓存文件按目标尺寸采样解码成bitmap并放入内存缓存
+     * 缩略图包命中时直接解码那份显示尺寸的小图
+     */
+    private class DecodeTask implements Runnable {
+        private final UrlLoad mLoad;
+        private final File mFile;
+        private final byte[] mThumbnail;
+
+        DecodeTask(UrlLoad load, File file, byte[] thumbnail) {
+            mLoad = load;
+            mFile = file;
+            mThumbnail = thumbnail;
+        }
+
+        @Override
+        public void run() {
+            // 文件已经在磁盘缓存中，holder不再需要时不必花时间解码
+            if (!mLoad.isWanted()) {
+                mLoad.finish();
+                return;
+            }
+            RequestTrace trace = mLoad.mTrace;
+            trace.begin();
+            if (mThumbnail != null) {
+                Bitmap bitmap = mBitmapDecoder.decodeThumbnail(mThumbnail);
+                if (bitmap == null) {
+                    mImageCache.removeThumbnail(thumbnailKey(mLoad.mUrl));
+                    mLoad.finish();
+                    return;
+                }
+                trace.end(ThumbnailMetrics.Stage.DECODE);
+                // 颜色在第一次解码时已经报告过
+                mImageCache.putBitmapToMemory(mLoad.mUrl, bitmap);
+                mImageCache.acquireBitmap(bitmap);
+                deliver(mLoad, bitmap);
+                return;
+            }
+            // 文件可能在排队期间被淘汰，此时解码失败，下次绑定时重新下载
+            Bitmap bitmap = mBitmapDecoder.decode(mFile);
+            if (bitmap == null) {
+                mLoad.finish();
+                return;
+            }
+            trace.end(ThumbnailMetrics.Stage.DECODE);
+            onDecoded(mLoad.mUrl, bitmap);
+            if (BuildConfig.DEBUG) {
+                Log.i(TAG, "handleRequest: bitmap created");
+            }
+            mImageCache.acquireBitmap(bitmap);
+            deliver(mLoad, bitmap);
+        }
+    }
+
+    /**
+     * 预取：依次查询缩略图包、磁盘缓存和网络，解码后只放入内存缓存，不回调任何holder
+     * 稍后holder绑定这个url时直接命中内存，不必显示占位图
+     */
+    private class PrefetchTask implements Runnable {
+        private final String mUrl;
+        private final int mGeneration;
+        private final CancellationSignal mSignal;
+
+        PrefetchTask(String url, int generation, CancellationSignal signal) {
+            mUrl = url;
+            mGeneration = generation;
+            mSignal = signal;
+        }
+
+        @Override
+        public void run() {
+            if (mGeneration != mPrefetchGeneration.get() || mImageCache.isInMemory(mUrl)) {
+                return;
+            }
+            if (loadThumbnail(mUrl) != null) {
                 return;
             }
-            byte[] bitmapBytes = new PhotoFetcher().getUrlBytes(url);
-            final Bitmap bitmap = BitmapFactory.decodeByteArray(bitmapBytes, 0, bitmapBytes.length);
-            Log.i(TAG, "handleRequest: bitmap created" );
+            try {
+                File file = mImageCache.getFileFromDisk(mUrl);
+                if (file == null) {
+                    // 可见请求还在排队时让出带宽，剩余的位置留给下一批预取
+                    if (mPrefetchRemaining.get() <= 0 || !mNetworkExecutor.getQueue().isEmpty()) {
+                        return;
+                    }
+                    file = fetchWithHostLimit(mUrl, mSignal, null,
+                            Deadline.after(FETCH_DEADLINE_MILLIS), false);
+                    mPrefetchRemaining.addAndGet(-file.length());
+                }
+                if (mGeneration != mPrefetchGeneration.get()) {
+                    return;
+                }
+                Bitmap bitmap = mBitmapDecoder.decode(file);
+                if (bitmap != null) {
+                    onDecoded(mUrl, bitmap);
+                }
+            } catch (OperationCanceledException e) {
+                if (BuildConfig.DEBUG) {
+                    Log.i(TAG, "PrefetchTask: canceled " + mUrl);
+                }
+            } catch (IOException e) {
+                Log.e(TAG, "PrefetchTask: ", e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * 新解码的bitmap 重新编码存入缩略图包，再放入内存缓存，并报告它的平均颜色
+     * 编码必须在放入内存缓存之前：之后它可能被淘汰进复用池，被其它解码覆盖
+     */
+    private void onDecoded(String url, Bitmap bitmap) {
+        byte[] thumbnail = mBitmapDecoder.encodeThumbnail(bitmap);
+        if (thumbnail != null) {
+            mImageCache.putThumbnail(thumbnailKey(url), thumbnail);
+        }
+        mImageCache.putBitmapToMemory(url, bitmap);
+        ColorListener listener = mColorListener;
+        if (listener != null) {
+            listener.onColorExtracted(url, BitmapDecoder.averageColor(bitmap));
+        }
+    }
+
+    /**
+     * 从缩略图包加载并放入内存缓存，在调用线程上解码，供预取和同步加载使用
+     *
+     * @return bitmap，未命中或无法解码时为null
+     */
+    private Bitmap loadThumbnail(String url) {
+        String key = thumbnailKey(url);
+        byte[] thumbnail = mImageCache.getThumbnail(key);
+        if (thumbnail == null) {
+            return null;
+        }
+        Bitmap bitmap = mBitmapDecoder.decodeThumbnail(thumbnail);
+        if (bitmap == null) {
+            mImageCache.removeThumbnail(key);
+            return null;
+        }
+        mImageCache.putBitmapToMemory(url, bitmap);
+        return bitmap;
+    }
+
+    /**
+     * 缩略图按显示尺寸保存，尺寸改变（例如旋转屏幕后列数变化）时不再命中旧的
+     */
+    private String thumbnailKey(String url) {
+        return mBitmapDecoder.getTargetWidth() + "x" + mBitmapDecoder.getTargetHeight() + " " + url;
+    }
+
+    /**
+     * 获取host对应的许可后再访问网络，同一host上的并发连接不超过mMaxRequestsPerHost
+     * 对冲请求不占用许可，其数量由对冲线程数限制
+     *
+     * @param deadline 截止时间，等待许可的时间也计算在内
+     * @param hedge    是否允许对冲，只用于可见请求
+     * @return 写入磁盘缓存的文件
+     */
+    private File fetchWithHostLimit(String url, CancellationSignal signal, RequestTrace trace,
+                                      Deadline deadline, boolean hedge)
+            throws IOException, InterruptedException {
+        String host = Uri.parse(url).getHost();
+        if (host == null) {
+            host = "";
+        }
+        Semaphore permits = mHostPermits.get(host);
+        if (permits == null) {
+            Semaphore created = new Semaphore(mMaxRequestsPerHost);
+            permits = mHostPermits.putIfAbsent(host, created);
+            if (permits == null) {
+                permits = created;
+            }
+        }
+        if (!permits.tryAcquire(deadline.remainingMillis(), TimeUnit.MILLISECONDS)) {
+            throw new SocketTimeoutException("deadline exceeded waiting for " + host);
+        }
+        try {
+            // 等待许可期间可能已被取消
+            signal.throwIfCanceled();
+            long start = System.nanoTime();
+            long hedgeDelay = hedge && mHedging ? hedgeDelayMillis() : -1;
+            File file = hedgeDelay < 0
+                    ? new PhotoFetcher().downloadToCache(url, mImageCache, signal, trace, deadline)
+                    : new HedgedFetch(url, deadline).fetch(signal, trace, hedgeDelay);
+            mFetchLatency.record(System.nanoTime() - start);
+            return file;
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * 一次对冲下载：调用线程发出主请求，延迟之后在对冲线程上发出相同的请求
+     * 先完成的一方胜出并取消另一方；一方失败时等待另一方的结果
+     * 调用者的取消信号同时取消两者
+     * 两者各自写临时文件再改名，内容相同，后完成的一方覆盖先完成的也无妨
+     */
+    private class HedgedFetch implements Runnable {
+        private final String mUrl;
+        private final Deadline mDeadline;
+        private final CancellationSignal mPrimarySignal = new CancellationSignal();
+        private final CancellationSignal mHedgeSignal = new CancellationSignal();
+        private final AtomicBoolean mClaimed = new AtomicBoolean();
+        private final CountDownLatch mHedgeDone = new CountDownLatch(1);
+        private volatile File mHedgeFile;
+        private volatile IOException mHedgeError;
+
+        HedgedFetch(String url, Deadline deadline) {
+            mUrl = url;
+            mDeadline = deadline;
+        }
 
-            // Handler的另一种初始化方式，在run()方法中的所有代码都在主线程中运行
-            mUIResponseHandler.post(new Runnable() {
+        File fetch(CancellationSignal signal, RequestTrace trace, long delayMillis)
+                throws IOException, InterruptedException {
+            signal.setOnCancelListener(new CancellationSignal.OnCancelListener() {
                 @Override
-                public void run() {
+                public void onCancel() {
+                    mPrimarySignal.cancel();
+                    mHedgeSignal.cancel();
+                }
+            });
+            try {
+                ScheduledFuture<?> hedge = mHedgeExecutor.schedule(this, delayMillis,
+                        TimeUnit.MILLISECONDS);
+                IOException primaryError = null;
+                try {
+                    File file = new PhotoFetcher().downloadToCache(mUrl, mImageCache,
+                            mPrimarySignal, trace, mDeadline);
+                    if (mClaimed.compareAndSet(false, true)) {
+                        hedge.cancel(false);
+                        mHedgeSignal.cancel();
+                    }
+                    return file;
+                } catch (IOException e) {
+                    primaryError = e;
+                } catch (OperationCanceledException e) {
+                    // 被调用者取消，或者对冲请求已经胜出
+                    signal.throwIfCanceled();
+                }
+                if (hedge.cancel(false)) {
+                    // 对冲请求还没有发出，主请求的失败就是最终结果
+                    throw primaryError != null ? primaryError : new IOException("primary canceled");
+                }
+                if (!mHedgeDone.await(mDeadline.remainingMillis(), TimeUnit.MILLISECONDS)) {
+                    mHedgeSignal.cancel();
+                    throw new SocketTimeoutException("deadline exceeded");
+                }
+                signal.throwIfCanceled();
+                if (mHedgeFile != null) {
+                    return mHedgeFile;
+                }
+                throw primaryError != null ? primaryError : mHedgeError;
+            } finally {
+                signal.setOnCancelListener(null);
+            }
+        }
+
+        @Override
+        public void run() {
+            mHedgesSent.incrementAndGet();
+            try {
+                File file = new PhotoFetcher().downloadToCache(mUrl, mImageCache, mHedgeSignal,
+                        null, mDeadline);
+                if (mClaimed.compareAndSet(false, true)) {
+                    mHedgeFile = file;
+                    mHedgesWon.incrementAndGet();
+                    mPrimarySignal.cancel();
+                }
+            } catch (IOException e) {
+                mHedgeError = e;
+            } catch (OperationCanceledException e) {
+                // 主请求已经胜出
+            } finally {
+                mHedgeDone.countDown();
+            }
+        }
+    }
+
+    /**
+     * 结束加载并在主线程把bitmap交给所有仍绑定着这个url的holder
+     * bitmap 已在内存缓存中，结束之后绑定这个url的holder直接命中
+     * bitmap 带着调用者登记的一次引用，每个holder 各自再登记一次，分发完毕后释放调用者的那一次
+     */
+    private void deliver(final UrlLoad load, final Bitmap bitmap) {
+        final List<T> waiters = load.finish();
+        final RequestTrace trace = load.mTrace;
+        trace.begin();
+        // Handler的另一种初始化方式，在run()方法中的所有代码都在主线程中运行
+        mUIResponseHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                for (T identity : waiters) {
                     // 由于PhotoHolder可能被回收复用，确认在下载图片期间url没有被改变
-                    if (mRequestMap.get(identity) != url) {
-                        return;
+                    if (!isCurrent(identity, load.mUrl)) {
+                        continue;
                     }
                     // 清除Map中的此次信息，从而不影响holder的复用
                     mRequestMap.remove(identity);
-
+                    mImageCache.acquireBitmap(bitmap);
                     mThumbnailDownloadListener.onThumbnailDownloaded(identity, bitmap);
                 }
-            });
-        } catch (IOException e) {
-            e.printStackTrace();
-            Log.e(TAG, "handleRequest: ", e);
+                // 没有holder 再需要时bitmap 也不会一直被钉住
+                mImageCache.releaseBitmap(bitmap);
+                trace.end(ThumbnailMetrics.Stage.BIND);
+            }
+        });
+    }
+
+    /**
+     * 工作线程以后台优先级运行，避免与UI线程争抢CPU
+     */
+    private static class BackgroundThreadFactory implements ThreadFactory {
+        private final AtomicInteger mCount = new AtomicInteger();
+        private final String mName;
+        private final int mPriority;
+
+        BackgroundThreadFactory(String name, int priority) {
+            mName = name;
+            mPriority = priority;
         }
 
+        @Override
+        public Thread newThread(final Runnable r) {
+            return new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Process.setThreadPriority(mPriority);
+                    r.run();
+                }
+            }, mName + "-" + mCount.incrementAndGet());
+        }
     }
 }
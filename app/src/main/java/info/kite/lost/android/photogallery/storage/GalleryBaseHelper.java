@@ -0,0 +1,56 @@
+package info.kite.lost.android.photogallery.storage;
+
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+
+import info.kite.lost.android.photogallery.storage.GalleryDbSchema.GalleryTable;
+
+/**
+ * 创建和升级本地照片元数据库
+ * <p>
+ * Created on 2026/10/18.
+ */
+
+public class GalleryBaseHelper extends SQLiteOpenHelper {
+    private static final int VERSION = 3;
+    private static final String DATABASE_NAME = "galleryBase.db";
+
+    public GalleryBaseHelper(Context context) {
+        super(context, DATABASE_NAME, null, VERSION);
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        // (query, page, position) 作为主键，按页读取时直接走主键索引
+        db.execSQL("create table " + GalleryTable.NAME + "("
+                + GalleryTable.Cols.QUERY + " text not null, "
+                + GalleryTable.Cols.PAGE + " integer not null, "
+                + GalleryTable.Cols.POSITION + " integer not null, "
+                + GalleryTable.Cols.PHOTO_ID + " text, "
+                + GalleryTable.Cols.CAPTION + " text, "
+                + GalleryTable.Cols.URL + " text, "
+                + GalleryTable.Cols.URL_TINY + " text, "
+                + GalleryTable.Cols.URL_MEDIUM + " text, "
+                + GalleryTable.Cols.URL_LARGE + " text, "
+                + GalleryTable.Cols.WIDTH + " integer not null default 0, "
+                + GalleryTable.Cols.HEIGHT + " integer not null default 0, "
+                + GalleryTable.Cols.COLOR + " integer not null default 0, "
+                + GalleryTable.Cols.UPDATED + " integer, "
+                + "primary key (" + GalleryTable.Cols.QUERY + ", "
+                + GalleryTable.Cols.PAGE + ", "
+                + GalleryTable.Cols.POSITION + "))");
+        // 解码后按url 回写颜色，预览档位的url 同样可以
+        db.execSQL("create index " + GalleryTable.NAME + "_" + GalleryTable.Cols.URL
+                + " on " + GalleryTable.NAME + "(" + GalleryTable.Cols.URL + ")");
+        db.execSQL("create index " + GalleryTable.NAME + "_" + GalleryTable.Cols.URL_TINY
+                + " on " + GalleryTable.NAME + "(" + GalleryTable.Cols.URL_TINY + ")");
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        // 表中只是网络数据的副本，直接重建即可
+        db.execSQL("drop table if exists " + GalleryTable.NAME);
+        onCreate(db);
+    }
+}
@@ -0,0 +1,42 @@
+package info.kite.lost.android.photogallery.storage;
+
+import android.database.Cursor;
+import android.database.CursorWrapper;
+
+import info.kite.lost.android.photogallery.model.GalleryItem;
+import info.kite.lost.android.photogallery.model.ImageTier;
+import info.kite.lost.android.photogallery.storage.GalleryDbSchema.GalleryTable;
+
+/**
+ * 将查询结果的一行转换成{@link GalleryItem}
+ * <p>
+ * Created on 2026/10/18.
+ */
+
+public class GalleryCursorWrapper extends CursorWrapper {
+
+    public GalleryCursorWrapper(Cursor cursor) {
+        super(cursor);
+    }
+
+    public GalleryItem getGalleryItem() {
+        GalleryItem item = new GalleryItem();
+        item.setId(getString(getColumnIndex(GalleryTable.Cols.PHOTO_ID)));
+        item.setCaption(getString(getColumnIndex(GalleryTable.Cols.CAPTION)));
+        item.setUrl(getString(getColumnIndex(GalleryTable.Cols.URL)));
+        setTierUrl(item, ImageTier.TINY, GalleryTable.Cols.URL_TINY);
+        setTierUrl(item, ImageTier.MEDIUM, GalleryTable.Cols.URL_MEDIUM);
+        setTierUrl(item, ImageTier.LARGE, GalleryTable.Cols.URL_LARGE);
+        item.setWidth(getInt(getColumnIndex(GalleryTable.Cols.WIDTH)));
+        item.setHeight(getInt(getColumnIndex(GalleryTable.Cols.HEIGHT)));
+        item.setColor(getInt(getColumnIndex(GalleryTable.Cols.COLOR)));
+        return item;
+    }
+
+    private void setTierUrl(GalleryItem item, ImageTier tier, String column) {
+        String url = getString(getColumnIndex(column));
+        if (url != null) {
+            item.setTierUrl(tier, url);
+        }
+    }
+}
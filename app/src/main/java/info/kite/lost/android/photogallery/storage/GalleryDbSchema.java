@@ -0,0 +1,35 @@
+package info.kite.lost.android.photogallery.storage;
+
+/**
+ * 本地照片元数据库的表结构定义
+ * <p>
+ * Created on 2026/10/18.
+ */
+
+public class GalleryDbSchema {
+    public static final class GalleryTable {
+        public static final String NAME = "gallery_items";
+
+        public static final class Cols {
+            // 查询关键词，流行照片使用空字符串
+            public static final String QUERY = "query";
+            public static final String PAGE = "page";
+            // 在页内的顺序
+            public static final String POSITION = "position";
+            public static final String PHOTO_ID = "photo_id";
+            public static final String CAPTION = "caption";
+            // 默认档位（SMALL）的url，其余档位各占一列
+            public static final String URL = "url";
+            public static final String URL_TINY = "url_tiny";
+            public static final String URL_MEDIUM = "url_medium";
+            public static final String URL_LARGE = "url_large";
+            // 原图尺寸，未知时为0
+            public static final String WIDTH = "width";
+            public static final String HEIGHT = "height";
+            // 缩略图的平均颜色，解码后才写入，未知时为0
+            public static final String COLOR = "color";
+            // 写入时间，毫秒
+            public static final String UPDATED = "updated";
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package info.kite.lost.android.photogallery.storage;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import info.kite.lost.android.photogallery.model.GalleryItem;
+import info.kite.lost.android.photogallery.model.ImageTier;
+import info.kite.lost.android.photogallery.storage.GalleryDbSchema.GalleryTable;
+
+/**
+ * 按查询和页码保存{@link GalleryItem} 的本地存储，冷启动时先显示这里的数据，再从网络刷新
+ * 所有方法都会访问数据库，只能在工作线程调用
+ * <p>
+ * Created on 2026/10/18.
+ */
+
+public class GalleryStore {
+    private static final String TAG = "GalleryStore";
+    // 流行照片没有关键词，用空字符串作为key
+    private static final String POPULAR_QUERY = "";
+
+    private static GalleryStore sGalleryStore;
+
+    private SQLiteDatabase mDatabase;
+
+    public static synchronized GalleryStore get(Context context) {
+        if (sGalleryStore == null) {
+            sGalleryStore = new GalleryStore(context);
+        }
+        return sGalleryStore;
+    }
+
+    private GalleryStore(Context context) {
+        // 使用application context，避免持有activity
+        mDatabase = new GalleryBaseHelper(context.getApplicationContext()).getWritableDatabase();
+    }
+
+    /**
+     * 读取某次查询的一页
+     *
+     * @param query 关键词，null 表示流行照片
+     * @param page  页码
+     * @return 按原顺序排列的items，没有缓存时为空
+     */
+    public List<GalleryItem> getPage(String query, int page) {
+        List<GalleryItem> items = new ArrayList<>();
+        GalleryCursorWrapper cursor = new GalleryCursorWrapper(mDatabase.query(
+                GalleryTable.NAME,
+                null,
+                GalleryTable.Cols.QUERY + " = ? and " + GalleryTable.Cols.PAGE + " = ?",
+                new String[]{keyOf(query), String.valueOf(page)},
+                null,
+                null,
+                GalleryTable.Cols.POSITION));
+        try {
+            cursor.moveToFirst();
+            while (!cursor.isAfterLast()) {
+                items.add(cursor.getGalleryItem());
+                cursor.moveToNext();
+            }
+        } finally {
+            cursor.close();
+        }
+        return items;
+    }
+
+    /**
+     * 用网络返回的数据替换某一页
+     * 第一页被刷新时该查询的后续页已经过时，一并删除
+     *
+     * @param query 关键词，null 表示流行照片
+     * @param page  页码
+     * @param items 该页的items
+     */
+    public void putPage(String query, int page, List<GalleryItem> items) {
+        String key = keyOf(query);
+        long now = System.currentTimeMillis();
+        mDatabase.beginTransaction();
+        try {
+            String pageClause = page == 1 ? " >= ?" : " = ?";
+            mDatabase.delete(GalleryTable.NAME,
+                    GalleryTable.Cols.QUERY + " = ? and " + GalleryTable.Cols.PAGE + pageClause,
+                    new String[]{key, String.valueOf(page)});
+            for (int i = 0; i < items.size(); i++) {
+                mDatabase.insert(GalleryTable.NAME, null, getContentValues(key, page, i, items.get(i), now));
+            }
+            mDatabase.setTransactionSuccessful();
+        } finally {
+            mDatabase.endTransaction();
+        }
+    }
+
+    /**
+     * 为网络返回的items 补上之前解码缩略图时记录的颜色，应在{@link #putPage} 之前调用
+     *
+     * @param items 直接修改其中的颜色
+     */
+    public void fillColors(List<GalleryItem> items) {
+        if (items.isEmpty()) {
+            return;
+        }
+        StringBuilder placeholders = new StringBuilder();
+        String[] urls = new String[items.size()];
+        for (int i = 0; i < urls.length; i++) {
+            placeholders.append(i == 0 ? "?" : ",?");
+            urls[i] = items.get(i).getUrl();
+        }
+        Map<String, Integer> colors = new HashMap<>();
+        Cursor cursor = mDatabase.query(true, GalleryTable.NAME,
+                new String[]{GalleryTable.Cols.URL, GalleryTable.Cols.COLOR},
+                GalleryTable.Cols.COLOR + " != 0 and " + GalleryTable.Cols.URL
+                        + " in (" + placeholders + ")",
+                urls, null, null, null, null);
+        try {
+            while (cursor.moveToNext()) {
+                colors.put(cursor.getString(0), cursor.getInt(1));
+            }
+        } finally {
+            cursor.close();
+        }
+        for (GalleryItem item : items) {
+            Integer color = colors.get(item.getUrl());
+            if (color != null) {
+                item.setColor(color);
+            }
+        }
+    }
+
+    /**
+     * 记录一张缩略图的平均颜色，已有颜色的行不再改写
+     *
+     * @param url   缩略图url，网格按单元格宽度与网络类型选择的任一档位
+     * @param color ARGB
+     */
+    public void putColor(String url, int color) {
+        ContentValues values = new ContentValues();
+        values.put(GalleryTable.Cols.COLOR, color);
+        mDatabase.update(GalleryTable.NAME, values,
+                "(" + GalleryTable.Cols.URL + " = ? or " + GalleryTable.Cols.URL_TINY + " = ? or "
+                        + GalleryTable.Cols.URL_MEDIUM + " = ? or "
+                        + GalleryTable.Cols.URL_LARGE + " = ?) and "
+                        + GalleryTable.Cols.COLOR + " = 0",
+                new String[]{url, url, url, url});
+    }
+
+    private static ContentValues getContentValues(String query, int page, int position,
+                                                  GalleryItem item, long updated) {
+        ContentValues values = new ContentValues();
+        values.put(GalleryTable.Cols.QUERY, query);
+        values.put(GalleryTable.Cols.PAGE, page);
+        values.put(GalleryTable.Cols.POSITION, position);
+        values.put(GalleryTable.Cols.PHOTO_ID, item.getId());
+        values.put(GalleryTable.Cols.CAPTION, item.getCaption());
+        values.put(GalleryTable.Cols.URL, item.getUrl());
+        values.put(GalleryTable.Cols.URL_TINY, item.getTierUrl(ImageTier.TINY));
+        values.put(GalleryTable.Cols.URL_MEDIUM, item.getTierUrl(ImageTier.MEDIUM));
+        values.put(GalleryTable.Cols.URL_LARGE, item.getTierUrl(ImageTier.LARGE));
+        values.put(GalleryTable.Cols.WIDTH, item.getWidth());
+        values.put(GalleryTable.Cols.HEIGHT, item.getHeight());
+        values.put(GalleryTable.Cols.COLOR, item.getColor());
+        values.put(GalleryTable.Cols.UPDATED, updated);
+        return values;
+    }
+
+    private static String keyOf(String query) {
+        return query == null ? POPULAR_QUERY : query;
+    }
+}
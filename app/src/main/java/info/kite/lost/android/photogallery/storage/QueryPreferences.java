@@ -12,8 +12,9 @@ import android.preference.PreferenceManager;
 
 public class QueryPreferences {
     private static final String PREF_SEARCH_QUERY = "searchQuery";
-    private static final String PREF_LAST_RESULT_ID = "lastResultId";
     private static final String PREF_IS_ALARM_ON = "isAlarmOn";
+    private static final String PREF_POLL_INTERVAL = "pollInterval";
+    private static final String PREF_POLL_BACKOFF = "pollBackoff";
 
     public static String getStoredQuery(Context context) {
         // default SP 具有默认的名字和私有权限
@@ -28,32 +29,55 @@ public class QueryPreferences {
                 .apply();
     }
 
-    public static String getPrefLastResultId(Context context) {
+    /**
+     * 判断定时进程是否开启
+     * @param context {@link Context}
+     * @return boolean
+     */
+    public static boolean isAlarmOn(Context context) {
         return PreferenceManager.getDefaultSharedPreferences(context)
-                .getString(PREF_LAST_RESULT_ID, null);
+                .getBoolean(PREF_IS_ALARM_ON, false);
     }
 
-    public static void setPrefLastResultId(Context context, String lastResultId) {
+    public static void setAlarmOn(Context context, boolean isOn) {
         PreferenceManager.getDefaultSharedPreferences(context)
                 .edit()
-                .putString(PREF_LAST_RESULT_ID, lastResultId)
+                .putBoolean(PREF_IS_ALARM_ON, isOn)
                 .apply();
     }
 
     /**
-     * 判断定时进程是否开启
+     * 自适应的轮询间隔，毫秒
      * @param context {@link Context}
-     * @return boolean
+     * @param defaultInterval 还没有记录时使用的值
+     * @return long
      */
-    public static boolean isAlarmOn(Context context) {
+    public static long getPollInterval(Context context, long defaultInterval) {
         return PreferenceManager.getDefaultSharedPreferences(context)
-                .getBoolean(PREF_IS_ALARM_ON, false);
+                .getLong(PREF_POLL_INTERVAL, defaultInterval);
     }
 
-    public static void setAlarmOn(Context context, boolean isOn) {
+    public static void setPollInterval(Context context, long interval) {
         PreferenceManager.getDefaultSharedPreferences(context)
                 .edit()
-                .putBoolean(PREF_IS_ALARM_ON, isOn)
+                .putLong(PREF_POLL_INTERVAL, interval)
+                .apply();
+    }
+
+    /**
+     * 连续失败后的退避时间，毫秒，0 表示上次轮询成功
+     * @param context {@link Context}
+     * @return long
+     */
+    public static long getPollBackoff(Context context) {
+        return PreferenceManager.getDefaultSharedPreferences(context)
+                .getLong(PREF_POLL_BACKOFF, 0);
+    }
+
+    public static void setPollBackoff(Context context, long backoff) {
+        PreferenceManager.getDefaultSharedPreferences(context)
+                .edit()
+                .putLong(PREF_POLL_BACKOFF, backoff)
                 .apply();
     }
 }
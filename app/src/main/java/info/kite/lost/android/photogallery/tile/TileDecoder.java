@@ -0,0 +1,179 @@
+package info.kite.lost.android.photogallery.tile;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Rect;
+import android.os.AsyncTask;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.support.v4.util.LruCache;
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 用{@link BitmapRegionDecoder} 按块解码本地的大图，原图永远不会被完整解码进内存
+ * 解码在一个后台线程中按请求顺序进行，结果放入按字节数限制的块缓存
+ * 只在UI线程调用
+ * <p/>
+ * Created on 2026/10/18.
+ */
+
+public class TileDecoder {
+    private static final String TAG = "TileDecoder";
+    // 解码后每块的边长
+    public static final int TILE_SIZE = 256;
+
+    private final BitmapRegionDecoder mDecoder;
+    private final TileGrid mGrid;
+    private final LruCache<String, Bitmap> mTiles;
+    // 已提交但还没有结果的块
+    private final Set<String> mPending = new HashSet<>();
+    private final ThreadPoolExecutor mExecutor;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private Runnable mOnTileDecoded;
+    private boolean mRecycled;
+
+    /**
+     * @param path          本地图片文件
+     * @param maxCacheBytes 块缓存的上限，应能容纳一屏多一点的块
+     * @throws IOException 文件无法读取或格式不支持
+     */
+    public TileDecoder(String path, int maxCacheBytes) throws IOException {
+        mDecoder = BitmapRegionDecoder.newInstance(path, false);
+        mGrid = new TileGrid(mDecoder.getWidth(), mDecoder.getHeight(), TILE_SIZE);
+        mTiles = new LruCache<String, Bitmap>(maxCacheBytes) {
+            @Override
+            protected int sizeOf(String key, Bitmap bitmap) {
+                return bitmap.getByteCount();
+            }
+        };
+        // BitmapRegionDecoder 内部加锁，多个线程并不能加快解码
+        mExecutor = new ThreadPoolExecutor(1, 1, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable r) {
+                return new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                        r.run();
+                    }
+                }, TAG);
+            }
+        });
+        mExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    public TileGrid getGrid() {
+        return mGrid;
+    }
+
+    /**
+     * @param onTileDecoded 每解码完一块在UI线程回调，通常是invalidate()
+     */
+    public void setOnTileDecoded(Runnable onTileDecoded) {
+        mOnTileDecoded = onTileDecoded;
+    }
+
+    /**
+     * @return 已解码的块，没有时返回null
+     */
+    public Bitmap getTile(TileGrid.Tile tile) {
+        return mTiles.get(tile.key());
+    }
+
+    /**
+     * 提交当前可见而尚未解码的块，之前排队但已不可见的块被丢弃
+     *
+     * @param tiles 当前可见的块
+     */
+    public void requestTiles(List<TileGrid.Tile> tiles) {
+        mExecutor.getQueue().clear();
+        mPending.clear();
+        try {
+            for (TileGrid.Tile tile : tiles) {
+                if (mTiles.get(tile.key()) == null && mPending.add(tile.key())) {
+                    mExecutor.execute(new DecodeTask(tile));
+                }
+            }
+        } catch (RejectedExecutionException e) {
+            Log.i(TAG, "requestTiles: decoder already recycled");
+        }
+    }
+
+    /**
+     * 停止解码并释放所有块，之后不能再使用
+     * 原生资源在后台线程等解码线程结束后才释放：recycle() 会等待正在进行的decodeRegion，
+     * 较早的版本上与解码同时进行也不安全
+     */
+    public void recycle() {
+        mRecycled = true;
+        mExecutor.shutdownNow();
+        mHandler.removeCallbacksAndMessages(null);
+        mTiles.evictAll();
+        mPending.clear();
+        AsyncTask.THREAD_POOL_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    while (!mExecutor.awaitTermination(1, TimeUnit.SECONDS)) {
+                        Log.i(TAG, "recycle: waiting for decodeRegion");
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                mDecoder.recycle();
+            }
+        });
+    }
+
+    private class DecodeTask implements Runnable {
+        private final TileGrid.Tile mTile;
+
+        DecodeTask(TileGrid.Tile tile) {
+            mTile = tile;
+        }
+
+        @Override
+        public void run() {
+            BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inSampleSize = mTile.sampleSize;
+            // 照片不需要透明通道，每像素2字节
+            options.inPreferredConfig = Bitmap.Config.RGB_565;
+            final Bitmap bitmap;
+            try {
+                bitmap = mDecoder.decodeRegion(
+                        new Rect(mTile.left, mTile.top, mTile.right, mTile.bottom), options);
+            } catch (IllegalStateException e) {
+                // recycle() 之后
+                return;
+            }
+            mHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    mPending.remove(mTile.key());
+                    if (bitmap == null || mRecycled) {
+                        return;
+                    }
+                    mTiles.put(mTile.key(), bitmap);
+                    if (mOnTileDecoded != null) {
+                        mOnTileDecoded.run();
+                    }
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,263 @@
+package info.kite.lost.android.photogallery.tile;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.RectF;
+import android.util.AttributeSet;
+import android.view.GestureDetector;
+import android.view.MotionEvent;
+import android.view.ScaleGestureDetector;
+import android.view.View;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 可缩放、拖动的大图控件
+ * 先把缩略图拉伸到整张图的范围作为预览，原图就绪后只解码当前可见的块并覆盖在预览之上
+ * 缩小时按采样率解码，放大时按原图像素解码，任何时刻内存中只有大约一屏的块
+ * 预览可能是原图中央的裁剪（例如方形的最小一档），按宽高比放在原图中央对应的区域
+ * <p/>
+ * Created on 2026/10/18.
+ */
+
+public class TiledImageView extends View {
+    private static final String TAG = "TiledImageView";
+    // 最多放大到原图像素的两倍
+    private static final float MAX_SCALE = 2f;
+
+    // 原图坐标到view 坐标的变换，只含缩放和平移
+    private final Matrix mMatrix = new Matrix();
+    private final Matrix mInverse = new Matrix();
+    private final float[] mValues = new float[9];
+    private final RectF mRect = new RectF();
+    // 预览在原图坐标中覆盖的区域
+    private final RectF mPreviewRect = new RectF();
+    private final Paint mPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+
+    private Bitmap mPreview;
+    private TileDecoder mTileDecoder;
+    // 当前内容的尺寸，原图就绪前是预览的尺寸
+    private int mImageWidth;
+    private int mImageHeight;
+    private float mMinScale;
+    // 变换改变时计算一次，onDraw() 中不再分配
+    private List<TileGrid.Tile> mVisibleTiles = Collections.emptyList();
+
+    private final ScaleGestureDetector mScaleDetector;
+    private final GestureDetector mGestureDetector;
+
+    private final Runnable mInvalidate = new Runnable() {
+        @Override
+        public void run() {
+            invalidate();
+        }
+    };
+
+    public TiledImageView(Context context) {
+        this(context, null);
+    }
+
+    public TiledImageView(Context context, AttributeSet attrs) {
+        super(context, attrs);
+        mScaleDetector = new ScaleGestureDetector(context,
+                new ScaleGestureDetector.SimpleOnScaleGestureListener() {
+                    @Override
+                    public boolean onScale(ScaleGestureDetector detector) {
+                        zoomTo(getScale() * detector.getScaleFactor(),
+                                detector.getFocusX(), detector.getFocusY());
+                        return true;
+                    }
+                });
+        mGestureDetector = new GestureDetector(context, new GestureDetector.SimpleOnGestureListener() {
+            @Override
+            public boolean onScroll(MotionEvent e1, MotionEvent e2, float dx, float dy) {
+                mMatrix.postTranslate(-dx, -dy);
+                onMatrixChanged();
+                return true;
+            }
+
+            @Override
+            public boolean onDoubleTap(MotionEvent e) {
+                // 在适应屏幕与原图像素之间切换
+                float target = getScale() > mMinScale * 1.01f ? mMinScale : Math.max(1f, mMinScale * 2);
+                zoomTo(target, e.getX(), e.getY());
+                return true;
+            }
+        });
+    }
+
+    /**
+     * 设置预览图，原图就绪前按预览的尺寸布局
+     */
+    public void setPreview(Bitmap preview) {
+        mPreview = preview;
+        if (mTileDecoder == null && preview != null) {
+            setImageSize(preview.getWidth(), preview.getHeight());
+        }
+        updatePreviewRect();
+        invalidate();
+    }
+
+    /**
+     * 设置原图的分块解码器，保持当前的显示范围不变
+     *
+     * @param tileDecoder 由调用者负责回收，可为null
+     */
+    public void setTileDecoder(TileDecoder tileDecoder) {
+        if (mTileDecoder != null) {
+            mTileDecoder.setOnTileDecoded(null);
+        }
+        mTileDecoder = tileDecoder;
+        mVisibleTiles = Collections.emptyList();
+        if (tileDecoder != null) {
+            tileDecoder.setOnTileDecoded(mInvalidate);
+            setImageSize(tileDecoder.getGrid().getImageWidth(), tileDecoder.getGrid().getImageHeight());
+        }
+        invalidate();
+    }
+
+    private void setImageSize(int width, int height) {
+        int oldWidth = mImageWidth;
+        mImageWidth = width;
+        mImageHeight = height;
+        updatePreviewRect();
+        if (getWidth() == 0 || width == 0) {
+            return;
+        }
+        mMinScale = Math.min(getWidth() / (float) width, getHeight() / (float) height);
+        if (oldWidth == 0) {
+            fitToView();
+        } else {
+            // 预览换成原图：预览坐标对应原图中的mPreviewRect，保持看到的位置不变
+            float scale = oldWidth / mPreviewRect.width();
+            mMatrix.preScale(scale, scale);
+            mMatrix.preTranslate(-mPreviewRect.left, -mPreviewRect.top);
+            onMatrixChanged();
+        }
+    }
+
+    /**
+     * 预览与原图宽高比不同时视为居中裁剪，取原图中央与预览宽高比相同的最大区域
+     */
+    private void updatePreviewRect() {
+        mPreviewRect.set(0, 0, mImageWidth, mImageHeight);
+        if (mPreview == null || mImageWidth == 0 || mImageHeight == 0) {
+            return;
+        }
+        float previewAspect = mPreview.getWidth() / (float) mPreview.getHeight();
+        if (mImageWidth / (float) mImageHeight > previewAspect) {
+            float width = mImageHeight * previewAspect;
+            mPreviewRect.left = (mImageWidth - width) / 2;
+            mPreviewRect.right = mPreviewRect.left + width;
+        } else {
+            float height = mImageWidth / previewAspect;
+            mPreviewRect.top = (mImageHeight - height) / 2;
+            mPreviewRect.bottom = mPreviewRect.top + height;
+        }
+    }
+
+    private void fitToView() {
+        mMatrix.setScale(mMinScale, mMinScale);
+        onMatrixChanged();
+    }
+
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        if (mImageWidth != 0) {
+            mMinScale = Math.min(w / (float) mImageWidth, h / (float) mImageHeight);
+            fitToView();
+        }
+    }
+
+    private float getScale() {
+        mMatrix.getValues(mValues);
+        return mValues[Matrix.MSCALE_X];
+    }
+
+    private void zoomTo(float scale, float focusX, float focusY) {
+        float maxScale = Math.max(mMinScale, MAX_SCALE);
+        scale = Math.max(mMinScale, Math.min(maxScale, scale));
+        float factor = scale / getScale();
+        mMatrix.postScale(factor, factor, focusX, focusY);
+        onMatrixChanged();
+    }
+
+    /**
+     * 限制平移范围后请求新的可见块并重绘
+     */
+    private void onMatrixChanged() {
+        mRect.set(0, 0, mImageWidth, mImageHeight);
+        mMatrix.mapRect(mRect);
+        float dx = clampOffset(mRect.left, mRect.right, getWidth());
+        float dy = clampOffset(mRect.top, mRect.bottom, getHeight());
+        mMatrix.postTranslate(dx, dy);
+        if (mTileDecoder != null) {
+            mVisibleTiles = getVisibleTiles();
+            mTileDecoder.requestTiles(mVisibleTiles);
+        }
+        invalidate();
+    }
+
+    /**
+     * 内容比view 小时居中，否则不留空白
+     */
+    private static float clampOffset(float start, float end, int size) {
+        if (end - start <= size) {
+            return (size - (end - start)) / 2 - start;
+        }
+        if (start > 0) {
+            return -start;
+        }
+        if (end < size) {
+            return size - end;
+        }
+        return 0;
+    }
+
+    private List<TileGrid.Tile> getVisibleTiles() {
+        if (!mMatrix.invert(mInverse)) {
+            return Collections.emptyList();
+        }
+        mRect.set(0, 0, getWidth(), getHeight());
+        mInverse.mapRect(mRect);
+        return mTileDecoder.getGrid().visibleTiles(TileGrid.sampleSizeFor(getScale()),
+                (int) Math.floor(mRect.left), (int) Math.floor(mRect.top),
+                (int) Math.ceil(mRect.right), (int) Math.ceil(mRect.bottom));
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        if (mImageWidth == 0) {
+            return;
+        }
+        canvas.save();
+        canvas.concat(mMatrix);
+        if (mPreview != null) {
+            canvas.drawBitmap(mPreview, null, mPreviewRect, mPaint);
+        }
+        if (mTileDecoder != null) {
+            // 按下标遍历，不创建迭代器
+            for (int i = 0; i < mVisibleTiles.size(); i++) {
+                TileGrid.Tile tile = mVisibleTiles.get(i);
+                Bitmap bitmap = mTileDecoder.getTile(tile);
+                if (bitmap != null) {
+                    mRect.set(tile.left, tile.top, tile.right, tile.bottom);
+                    canvas.drawBitmap(bitmap, null, mRect, mPaint);
+                }
+            }
+        }
+        canvas.restore();
+    }
+
+    @Override
+    public boolean onTouchEvent(MotionEvent event) {
+        mScaleDetector.onTouchEvent(event);
+        mGestureDetector.onTouchEvent(event);
+        return true;
+    }
+}
@@ -0,0 +1,29 @@
+package info.kite.lost.android.photogallery.net;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * {@link BitmapDecoder#calculateInSampleSize(int, int, int, int)} 的本地单元测试
+ */
+public class BitmapDecoderTest {
+
+    @Test
+    public void noTarget_doesNotSample() throws Exception {
+        assertEquals(1, BitmapDecoder.calculateInSampleSize(2048, 1536, 0, 0));
+    }
+
+    @Test
+    public void largeImage_sampledButStillCoversTarget() throws Exception {
+        // 540x315 的格子，2048x1536 的原图最多缩小到 1/2
+        assertEquals(2, BitmapDecoder.calculateInSampleSize(2048, 1536, 540, 315));
+        // 更小的格子可以继续缩小
+        assertEquals(4, BitmapDecoder.calculateInSampleSize(2048, 1536, 360, 315));
+    }
+
+    @Test
+    public void smallImage_keepsOriginalSize() throws Exception {
+        assertEquals(1, BitmapDecoder.calculateInSampleSize(280, 280, 540, 315));
+    }
+}
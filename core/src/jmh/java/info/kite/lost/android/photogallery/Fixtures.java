@@ -0,0 +1,32 @@
+package info.kite.lost.android.photogallery;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import info.kite.lost.android.photogallery.net.ByteStreams;
+
+/**
+ * 读取src/test/resources 中的样本：500px 列表响应和一张JPEG
+ * <p/>
+ * Created on 2026/10/18.
+ */
+
+public class Fixtures {
+    public static final String PHOTOS_POPULAR = "photos_popular.json";
+    public static final String PHOTO_JPEG = "photo_600x400.jpg";
+
+    private Fixtures() {
+    }
+
+    public static byte[] read(String name) throws IOException {
+        InputStream in = Fixtures.class.getClassLoader().getResourceAsStream(name);
+        if (in == null) {
+            throw new IOException("missing fixture: " + name);
+        }
+        try {
+            return ByteStreams.readFully(in, -1);
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package info.kite.lost.android.photogallery.cache;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import info.kite.lost.android.photogallery.Fixtures;
+
+/**
+ * 磁盘缓存的查询与流式写入开销，与app 的用法一致：命中时只取得文件交给解码器，写入时从输入流复制
+ * 缓存目录放在系统临时目录中，写入的是真实的JPEG 样本
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Thread)
+public class DiskCacheBenchmark {
+    private static final int ENTRY_COUNT = 100;
+    private static final String URL_PREFIX = "https://drscdn.500px.org/photo/";
+
+    private File mDirectory;
+    private DiskCache mDiskCache;
+    private byte[] mPhoto;
+    private int mNext;
+
+    @Setup
+    public void fillCache() throws IOException {
+        mPhoto = Fixtures.read(Fixtures.PHOTO_JPEG);
+        mDirectory = File.createTempFile("disk-cache", "");
+        mDirectory.delete();
+        mDiskCache = new DiskCache(mDirectory, 20 * 1024 * 1024);
+        for (int i = 0; i < ENTRY_COUNT; i++) {
+            put(URL_PREFIX + i);
+        }
+    }
+
+    @TearDown
+    public void deleteCache() {
+        File[] files = mDirectory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        mDirectory.delete();
+    }
+
+    @Benchmark
+    public File getFileHit() {
+        return mDiskCache.getFile(URL_PREFIX + nextIndex());
+    }
+
+    @Benchmark
+    public File getFileMiss() {
+        return mDiskCache.getFile(URL_PREFIX + "missing/" + nextIndex());
+    }
+
+    @Benchmark
+    public File putStream() throws IOException {
+        return put(URL_PREFIX + nextIndex());
+    }
+
+    private File put(String url) throws IOException {
+        return mDiskCache.put(url, new ByteArrayInputStream(mPhoto), mPhoto.length);
+    }
+
+    private int nextIndex() {
+        mNext = (mNext + 1) % ENTRY_COUNT;
+        return mNext;
+    }
+}
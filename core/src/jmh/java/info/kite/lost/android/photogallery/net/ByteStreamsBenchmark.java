@@ -0,0 +1,40 @@
+package info.kite.lost.android.photogallery.net;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import info.kite.lost.android.photogallery.Fixtures;
+
+/**
+ * 有无Content-Length 时读取一张缩略图的开销，对应ByteStreams.readFully() 的两条路径
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+public class ByteStreamsBenchmark {
+    private byte[] mPhoto;
+
+    @Setup
+    public void loadPhoto() throws IOException {
+        mPhoto = Fixtures.read(Fixtures.PHOTO_JPEG);
+    }
+
+    @Benchmark
+    public byte[] knownLength() throws IOException {
+        return ByteStreams.readFully(new ByteArrayInputStream(mPhoto), mPhoto.length);
+    }
+
+    @Benchmark
+    public byte[] unknownLength() throws IOException {
+        return ByteStreams.readFully(new ByteArrayInputStream(mPhoto), -1);
+    }
+}
@@ -0,0 +1,78 @@
+package info.kite.lost.android.photogallery.net;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import info.kite.lost.android.photogallery.Fixtures;
+import info.kite.lost.android.photogallery.model.GalleryItem;
+
+/**
+ * 流式解析与原先 String + org.json DOM 解析的吞吐和分配比较
+ * 将样本中的photos数组重复多次，分别模拟一页和一个很大的响应
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+public class GalleryItemParserBenchmark {
+    @Param({"30", "3000"})
+    public int mPhotoCount;
+
+    private byte[] mResponse;
+
+    @Setup
+    public void buildResponse() throws IOException {
+        JSONObject sample = new JSONObject(new String(Fixtures.read(Fixtures.PHOTOS_POPULAR), "UTF-8"));
+        JSONArray samplePhotos = sample.getJSONArray("photos");
+        JSONArray photos = new JSONArray();
+        for (int i = 0; i < mPhotoCount; i++) {
+            photos.put(samplePhotos.get(i % samplePhotos.length()));
+        }
+        sample.put("photos", photos);
+        mResponse = sample.toString().getBytes("UTF-8");
+    }
+
+    @Benchmark
+    public List<GalleryItem> streaming() throws IOException {
+        List<GalleryItem> items = new ArrayList<>();
+        new GalleryItemParser().parse(new ByteArrayInputStream(mResponse), items);
+        return items;
+    }
+
+    /**
+     * 原先PhotoFetcher 中的实现：整个响应转成字符串，再建立完整的JSONObject
+     */
+    @Benchmark
+    public List<GalleryItem> stringAndDom() throws IOException {
+        byte[] bytes = ByteStreams.readFully(new ByteArrayInputStream(mResponse), -1);
+        JSONObject jsonBody = new JSONObject(new String(bytes, "UTF-8"));
+        JSONArray photoJsonArray = jsonBody.getJSONArray("photos");
+        List<GalleryItem> items = new ArrayList<>();
+        for (int i = 0; i < photoJsonArray.length(); i++) {
+            JSONObject photoJsonObject = photoJsonArray.getJSONObject(i);
+            if (!photoJsonObject.has("image_url")) {
+                continue;
+            }
+            GalleryItem item = new GalleryItem();
+            // android 的org.json 会把数字转成字符串，桌面版的getString 不会
+            item.setId(photoJsonObject.optString("id"));
+            item.setCaption(photoJsonObject.optString("description", null));
+            item.setUrl(photoJsonObject.getString("image_url"));
+            items.add(item);
+        }
+        return items;
+    }
+}
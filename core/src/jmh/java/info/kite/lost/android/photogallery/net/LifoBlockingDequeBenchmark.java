@@ -0,0 +1,55 @@
+package info.kite.lost.android.photogallery.net;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 下载线程池工作队列的入队出队开销，与线程池默认的FIFO 队列对照
+ * 一次操作相当于快速滑动时提交又取走一屏的请求
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Thread)
+public class LifoBlockingDequeBenchmark {
+    private static final int BATCH = 64;
+
+    private final BlockingQueue<Runnable> mLifo = new LifoBlockingDeque<>();
+    private final BlockingQueue<Runnable> mFifo = new LinkedBlockingQueue<>();
+    private final Runnable mTask = new Runnable() {
+        @Override
+        public void run() {
+        }
+    };
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public Runnable lifo() {
+        return drain(mLifo);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public Runnable fifo() {
+        return drain(mFifo);
+    }
+
+    private Runnable drain(BlockingQueue<Runnable> queue) {
+        for (int i = 0; i < BATCH; i++) {
+            queue.offer(mTask);
+        }
+        Runnable last = null;
+        for (int i = 0; i < BATCH; i++) {
+            last = queue.poll();
+        }
+        return last;
+    }
+}
@@ -0,0 +1,35 @@
+package info.kite.lost.android.photogallery.net;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 每一页请求都会拼接一次链接，后台轮询也一样
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Thread)
+public class PhotoUrlsBenchmark {
+    private int mPage = 1;
+
+    @Benchmark
+    public String popular() {
+        return PhotoUrls.popular(mPage, 30);
+    }
+
+    @Benchmark
+    public String searchAscii() {
+        return PhotoUrls.search("mountain lake", mPage, 30);
+    }
+
+    @Benchmark
+    public String searchNonAscii() {
+        return PhotoUrls.search("山 湖泊", mPage, 30);
+    }
+}
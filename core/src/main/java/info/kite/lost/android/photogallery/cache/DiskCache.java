@@ -0,0 +1,190 @@
+package info.kite.lost.android.photogallery.cache;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import info.kite.lost.android.photogallery.net.ByteStreams;
+
+/**
+ * 磁盘上的二级缓存，每个url对应目录下的一个文件，文件名为url的MD5
+ * 总大小超出上限时按照最近最少使用的顺序删除文件
+ * 网络响应直接流式写入，再由解码器直接读取文件，压缩数据不经过Java 堆
+ * <p/>
+ * Created on 2026/10/18.
+ */
+
+public class DiskCache {
+    private static final String TAG = "DiskCache";
+    // 写入时使用的临时文件后缀，写完后再rename，避免读到一半的文件
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private final File mDirectory;
+    private final long mMaxBytes;
+    private long mSize;
+    // accessOrder 为true的LinkedHashMap，迭代顺序即为LRU顺序
+    private final LinkedHashMap<String, Long> mEntries = new LinkedHashMap<>(0, 0.75f, true);
+
+    /**
+     * @param directory 缓存目录，不存在时会被创建
+     * @param maxBytes  缓存目录的大小上限
+     */
+    public DiskCache(File directory, long maxBytes) {
+        mDirectory = directory;
+        mMaxBytes = maxBytes;
+        init();
+    }
+
+    /**
+     * 扫描已有的缓存文件，按照最后修改时间恢复LRU顺序
+     */
+    private synchronized void init() {
+        if (!mDirectory.exists() && !mDirectory.mkdirs()) {
+            return;
+        }
+        File[] files = mDirectory.listFiles();
+        if (files == null) {
+            return;
+        }
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File lhs, File rhs) {
+                long l = lhs.lastModified();
+                long r = rhs.lastModified();
+                return l < r ? -1 : (l == r ? 0 : 1);
+            }
+        });
+        for (File file : files) {
+            if (file.getName().endsWith(TEMP_SUFFIX)) {
+                // 上次写入被中断留下的残余
+                file.delete();
+                continue;
+            }
+            mEntries.put(file.getName(), file.length());
+            mSize += file.length();
+        }
+        trimToSize();
+    }
+
+    /**
+     * 取得url对应的缓存文件，不读取内容，供解码器直接从文件解码
+     * 文件随时可能被淘汰，已经打开的文件不受影响
+     *
+     * @param url 资源链接
+     * @return 缓存文件，未命中时返回null
+     */
+    public File getFile(String url) {
+        String key = keyOf(url);
+        File file;
+        synchronized (this) {
+            if (mEntries.get(key) == null) {
+                return null;
+            }
+            file = new File(mDirectory, key);
+        }
+        if (!file.setLastModified(System.currentTimeMillis()) && !file.exists()) {
+            // 被其它进程或系统清理了缓存目录
+            remove(url);
+            return null;
+        }
+        return file;
+    }
+
+    /**
+     * 将输入流的内容直接写入url对应的缓存文件，不在内存中保留完整内容
+     * 每次写入使用独立的临时文件，同一url 的并发写入互不干扰，后完成的覆盖先完成的
+     *
+     * @param url            资源链接
+     * @param in             输入流，由调用者关闭
+     * @param expectedLength 已知的内容长度，未知时传-1
+     * @return 缓存文件，内容超出缓存上限时返回null
+     * @throws IOException 读取或写入失败，不会留下残缺的文件
+     */
+    public File put(String url, InputStream in, long expectedLength) throws IOException {
+        if (expectedLength > mMaxBytes) {
+            return null;
+        }
+        String key = keyOf(url);
+        File temp = File.createTempFile(key, TEMP_SUFFIX, mDirectory);
+        File file = new File(mDirectory, key);
+        try {
+            long length = ByteStreams.copyToFile(in, temp, expectedLength);
+            synchronized (this) {
+                if (length > mMaxBytes || !temp.renameTo(file)) {
+                    temp.delete();
+                    return null;
+                }
+                Long previous = mEntries.put(key, length);
+                if (previous != null) {
+                    mSize -= previous;
+                }
+                mSize += length;
+                trimToSize();
+                return mEntries.containsKey(key) ? file : null;
+            }
+        } catch (IOException | RuntimeException e) {
+            temp.delete();
+            throw e;
+        }
+    }
+
+    public synchronized void remove(String url) {
+        String key = keyOf(url);
+        Long length = mEntries.remove(key);
+        if (length != null) {
+            mSize -= length;
+            new File(mDirectory, key).delete();
+        }
+    }
+
+    public synchronized boolean contains(String url) {
+        return mEntries.containsKey(keyOf(url));
+    }
+
+    /**
+     * @return 当前缓存文件的总字节数
+     */
+    public synchronized long size() {
+        return mSize;
+    }
+
+    public long maxSize() {
+        return mMaxBytes;
+    }
+
+    private void trimToSize() {
+        Iterator<Map.Entry<String, Long>> iterator = mEntries.entrySet().iterator();
+        while (mSize > mMaxBytes && iterator.hasNext()) {
+            Map.Entry<String, Long> eldest = iterator.next();
+            new File(mDirectory, eldest.getKey()).delete();
+            mSize -= eldest.getValue();
+            iterator.remove();
+        }
+    }
+
+    /**
+     * url中含有文件名不允许的字符，所以用其MD5作为文件名
+     */
+    static String keyOf(String url) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("MD5");
+            byte[] hash = digest.digest(url.getBytes("UTF-8"));
+            StringBuilder builder = new StringBuilder(hash.length * 2);
+            for (byte b : hash) {
+                builder.append(Character.forDigit((b >> 4) & 0xf, 16));
+                builder.append(Character.forDigit(b & 0xf, 16));
+            }
+            return builder.toString();
+        } catch (NoSuchAlgorithmException | UnsupportedEncodingException e) {
+            return String.valueOf(url.hashCode());
+        }
+    }
+}
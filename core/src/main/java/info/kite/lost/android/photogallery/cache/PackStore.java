@@ -0,0 +1,367 @@
+package info.kite.lost.android.photogallery.cache;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * 把大量小块数据追加写入同一个包文件，内存中保存key 到偏移量的索引，读取一条只需一次定位读
+ * 记录格式：魔数、key 长度、数据长度、数据的CRC32（各4 字节），之后是UTF-8 的key 和数据
+ * 数据长度为-1 的记录表示删除；打开时顺序扫描记录头重建索引，写了一半的尾部记录被截掉
+ * 覆盖或删除后旧记录成为垃圾，垃圾超过一半或文件超出上限时压实：
+ * 按最近使用的顺序把有效记录复制进新文件再替换旧文件，超出上限时最久未用的记录被丢弃
+ * <p/>
+ * Created on 2026/10/18.
+ */
+
+public class PackStore implements Closeable {
+    private static final String TAG = "PackStore";
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final int MAGIC = 0x504b3031;
+    private static final int HEADER_SIZE = 16;
+    private static final int TOMBSTONE = -1;
+    // 扫描时据此识别损坏的记录头
+    private static final int MAX_KEY_LENGTH = 4096;
+    private static final int MAX_DATA_LENGTH = 4 * 1024 * 1024;
+    // 压实时先写入的临时文件后缀，写完后再rename
+    private static final String COMPACT_SUFFIX = ".compact";
+    // 包文件很小时垃圾再多也不值得压实
+    private static final long MIN_COMPACT_BYTES = 256 * 1024;
+
+    private final File mFile;
+    private final long mMaxBytes;
+    private RandomAccessFile mAccessFile;
+    private FileChannel mChannel;
+    // 下一条记录的写入位置，也就是有效内容的末尾
+    private long mEnd;
+    // 索引中记录（含记录头与key）的总字节数，其余都是垃圾
+    private long mLiveBytes;
+    // accessOrder 为true的LinkedHashMap，迭代顺序即为LRU顺序
+    private final LinkedHashMap<String, Entry> mEntries = new LinkedHashMap<>(0, 0.75f, true);
+
+    private static class Entry {
+        final long mOffset;
+        final int mRecordLength;
+        final int mDataLength;
+        final int mCrc;
+
+        Entry(long offset, int recordLength, int dataLength, int crc) {
+            mOffset = offset;
+            mRecordLength = recordLength;
+            mDataLength = dataLength;
+            mCrc = crc;
+        }
+
+        long dataOffset() {
+            return mOffset + mRecordLength - mDataLength;
+        }
+    }
+
+    /**
+     * @param file     包文件，不存在时会被创建
+     * @param maxBytes 包文件的大小上限
+     */
+    public PackStore(File file, long maxBytes) {
+        mFile = file;
+        mMaxBytes = maxBytes;
+        open();
+    }
+
+    private synchronized void open() {
+        // 上次压实被中断留下的残余
+        new File(mFile.getPath() + COMPACT_SUFFIX).delete();
+        File parent = mFile.getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            return;
+        }
+        try {
+            mAccessFile = new RandomAccessFile(mFile, "rw");
+            mChannel = mAccessFile.getChannel();
+            scan();
+        } catch (IOException e) {
+            // 无法使用的包文件直接删掉，下次启动重新开始
+            closeChannel();
+            mFile.delete();
+            mEntries.clear();
+            mEnd = 0;
+            mLiveBytes = 0;
+        }
+    }
+
+    /**
+     * 只读取记录头和key，不读数据；数据的校验留到读取时进行
+     */
+    private void scan() throws IOException {
+        long size = mChannel.size();
+        long position = 0;
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        while (position + HEADER_SIZE <= size) {
+            header.clear();
+            readFully(header, position);
+            header.flip();
+            int magic = header.getInt();
+            int keyLength = header.getInt();
+            int dataLength = header.getInt();
+            int crc = header.getInt();
+            if (magic != MAGIC || keyLength <= 0 || keyLength > MAX_KEY_LENGTH
+                    || dataLength < TOMBSTONE || dataLength > MAX_DATA_LENGTH) {
+                break;
+            }
+            int recordLength = HEADER_SIZE + keyLength + Math.max(dataLength, 0);
+            if (position + recordLength > size) {
+                break;
+            }
+            ByteBuffer keyBuffer = ByteBuffer.allocate(keyLength);
+            readFully(keyBuffer, position + HEADER_SIZE);
+            String key = new String(keyBuffer.array(), UTF_8);
+            Entry previous = dataLength == TOMBSTONE
+                    ? mEntries.remove(key)
+                    : mEntries.put(key, new Entry(position, recordLength, dataLength, crc));
+            if (previous != null) {
+                mLiveBytes -= previous.mRecordLength;
+            }
+            if (dataLength != TOMBSTONE) {
+                mLiveBytes += recordLength;
+            }
+            position += recordLength;
+        }
+        if (position < size) {
+            // 写入时被中断，丢弃不完整的尾部
+            mChannel.truncate(position);
+        }
+        mEnd = position;
+    }
+
+    /**
+     * 读取key 对应的数据，数据校验失败时删除这条记录
+     *
+     * @param key 键
+     * @return 数据，未命中时返回null
+     */
+    public synchronized byte[] get(String key) {
+        Entry entry = mEntries.get(key);
+        if (entry == null || mChannel == null) {
+            return null;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(entry.mDataLength);
+        try {
+            readFully(buffer, entry.dataOffset());
+        } catch (IOException e) {
+            remove(key);
+            return null;
+        }
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array());
+        if ((int) crc.getValue() != entry.mCrc) {
+            remove(key);
+            return null;
+        }
+        return buffer.array();
+    }
+
+    /**
+     * 在包文件末尾追加一条记录，之前同一key 的记录成为垃圾
+     * 写入失败时放弃这一条，不影响已有的记录
+     *
+     * @param key  键
+     * @param data 数据
+     */
+    public synchronized void put(String key, byte[] data) {
+        byte[] keyBytes = key.getBytes(UTF_8);
+        if (mChannel == null || keyBytes.length > MAX_KEY_LENGTH
+                || data.length > MAX_DATA_LENGTH) {
+            return;
+        }
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        Entry entry = new Entry(mEnd, HEADER_SIZE + keyBytes.length + data.length, data.length,
+                (int) crc.getValue());
+        if (!append(keyBytes, data, entry.mDataLength, entry.mCrc)) {
+            return;
+        }
+        Entry previous = mEntries.put(key, entry);
+        if (previous != null) {
+            mLiveBytes -= previous.mRecordLength;
+        }
+        mLiveBytes += entry.mRecordLength;
+        compactIfNeeded();
+    }
+
+    /**
+     * 追加一条删除记录，重新打开时这个key 不会恢复
+     */
+    public synchronized void remove(String key) {
+        Entry entry = mEntries.remove(key);
+        if (entry == null || mChannel == null) {
+            return;
+        }
+        mLiveBytes -= entry.mRecordLength;
+        append(key.getBytes(UTF_8), new byte[0], TOMBSTONE, 0);
+        compactIfNeeded();
+    }
+
+    public synchronized boolean contains(String key) {
+        return mEntries.containsKey(key);
+    }
+
+    public synchronized int count() {
+        return mEntries.size();
+    }
+
+    /**
+     * @return 包文件的字节数，含垃圾
+     */
+    public synchronized long size() {
+        return mEnd;
+    }
+
+    /**
+     * @return 有效记录的字节数
+     */
+    public synchronized long liveSize() {
+        return mLiveBytes;
+    }
+
+    public long maxSize() {
+        return mMaxBytes;
+    }
+
+    private boolean append(byte[] keyBytes, byte[] data, int dataLength, int crc) {
+        ByteBuffer record = ByteBuffer.allocate(HEADER_SIZE + keyBytes.length + data.length);
+        record.putInt(MAGIC).putInt(keyBytes.length).putInt(dataLength).putInt(crc)
+                .put(keyBytes).put(data);
+        record.flip();
+        try {
+            while (record.hasRemaining()) {
+                mChannel.write(record, mEnd + record.position());
+            }
+            mEnd += record.limit();
+            return true;
+        } catch (IOException e) {
+            try {
+                // 截掉写了一半的记录，下一条仍从原来的位置写
+                mChannel.truncate(mEnd);
+            } catch (IOException ignored) {
+                // 重新打开时扫描会截掉它
+            }
+            return false;
+        }
+    }
+
+    private void compactIfNeeded() {
+        if (mEnd > mMaxBytes || (mEnd >= MIN_COMPACT_BYTES && mEnd - mLiveBytes > mEnd / 2)) {
+            compact();
+        }
+    }
+
+    /**
+     * 把有效记录按LRU 顺序复制进新文件，再替换旧文件
+     * 超出上限时先丢弃最久未用的记录直到只占上限的3/4，避免之后每次写入都要压实
+     */
+    public synchronized void compact() {
+        if (mChannel == null) {
+            return;
+        }
+        if (mEnd > mMaxBytes) {
+            Iterator<Map.Entry<String, Entry>> iterator = mEntries.entrySet().iterator();
+            while (mLiveBytes > mMaxBytes * 3 / 4 && iterator.hasNext()) {
+                mLiveBytes -= iterator.next().getValue().mRecordLength;
+                iterator.remove();
+            }
+        }
+        File temp = new File(mFile.getPath() + COMPACT_SUFFIX);
+        LinkedHashMap<String, Entry> moved = new LinkedHashMap<>(0, 0.75f, true);
+        long position = 0;
+        RandomAccessFile out = null;
+        try {
+            out = new RandomAccessFile(temp, "rw");
+            FileChannel channel = out.getChannel();
+            ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + MAX_KEY_LENGTH);
+            for (Map.Entry<String, Entry> item : mEntries.entrySet()) {
+                Entry entry = item.getValue();
+                if (buffer.capacity() < entry.mRecordLength) {
+                    buffer = ByteBuffer.allocate(entry.mRecordLength);
+                }
+                buffer.clear();
+                buffer.limit(entry.mRecordLength);
+                readFully(buffer, entry.mOffset);
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                moved.put(item.getKey(), new Entry(position, entry.mRecordLength,
+                        entry.mDataLength, entry.mCrc));
+                position += entry.mRecordLength;
+            }
+            // 改名之前确保内容已经落盘，断电后不会得到一个空的包文件
+            channel.force(false);
+            out.close();
+            out = null;
+            closeChannel();
+            if (!temp.renameTo(mFile)) {
+                throw new IOException("rename failed: " + temp);
+            }
+        } catch (IOException e) {
+            closeQuietly(out);
+            temp.delete();
+            if (mChannel == null) {
+                // 旧文件已经关闭，重新扫描它
+                mEntries.clear();
+                mEnd = 0;
+                mLiveBytes = 0;
+                open();
+            }
+            return;
+        }
+        mEntries.clear();
+        mEntries.putAll(moved);
+        mEnd = position;
+        mLiveBytes = position;
+        try {
+            mAccessFile = new RandomAccessFile(mFile, "rw");
+            mChannel = mAccessFile.getChannel();
+        } catch (IOException e) {
+            mEntries.clear();
+            mEnd = 0;
+            mLiveBytes = 0;
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        closeChannel();
+    }
+
+    private void closeChannel() {
+        closeQuietly(mAccessFile);
+        mAccessFile = null;
+        mChannel = null;
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (mChannel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("unexpected end of " + mFile);
+            }
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable == null) {
+            return;
+        }
+        try {
+            closeable.close();
+        } catch (IOException ignored) {
+            // 关闭失败不影响已经写入的内容
+        }
+    }
+}
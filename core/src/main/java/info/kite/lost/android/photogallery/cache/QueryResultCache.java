@@ -0,0 +1,87 @@
+package info.kite.lost.android.photogallery.cache;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import info.kite.lost.android.photogallery.model.GalleryItem;
+
+/**
+ * 最近查询结果的内存缓存，键为 查询词 + 页码，条目超过有效期后视为不存在
+ * 回到刚才搜索过的关键词时直接显示，不必等待网络
+ * 时间由调用者传入，使用同一个单调时钟即可，例如SystemClock.elapsedRealtime()
+ * <p/>
+ * Created on 2026/10/18.
+ */
+
+public class QueryResultCache {
+    private final int mMaxEntries;
+    private final long mTtlMillis;
+    // accessOrder 为true，超出容量时淘汰最久未使用的条目
+    private final LinkedHashMap<String, CachedPage> mEntries;
+
+    private static class CachedPage {
+        final List<GalleryItem> mItems;
+        final long mCreatedAt;
+
+        CachedPage(List<GalleryItem> items, long createdAt) {
+            mItems = items;
+            mCreatedAt = createdAt;
+        }
+    }
+
+    /**
+     * @param maxEntries 最多保存的页数
+     * @param ttlMillis  每一页的有效期
+     */
+    public QueryResultCache(final int maxEntries, long ttlMillis) {
+        mMaxEntries = maxEntries;
+        mTtlMillis = ttlMillis;
+        mEntries = new LinkedHashMap<String, CachedPage>(0, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedPage> eldest) {
+                return size() > mMaxEntries;
+            }
+        };
+    }
+
+    /**
+     * @param query 关键词，null 表示流行照片
+     * @param page  页码
+     * @param now   当前时间，毫秒
+     * @return 结果的副本，调用者可以随意修改；未命中或已过期时返回null
+     */
+    public synchronized List<GalleryItem> get(String query, int page, long now) {
+        String key = keyOf(query, page);
+        CachedPage entry = mEntries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (now - entry.mCreatedAt >= mTtlMillis) {
+            mEntries.remove(key);
+            return null;
+        }
+        return new ArrayList<>(entry.mItems);
+    }
+
+    /**
+     * 保存一页结果的副本，之后对传入list 的修改不影响缓存
+     */
+    public synchronized void put(String query, int page, List<GalleryItem> items, long now) {
+        mEntries.put(keyOf(query, page), new CachedPage(new ArrayList<>(items), now));
+    }
+
+    public synchronized void clear() {
+        mEntries.clear();
+    }
+
+    public synchronized int size() {
+        return mEntries.size();
+    }
+
+    private static String keyOf(String query, int page) {
+        // 流行照片与空查询区分开
+        return (query == null ? "popular" : "search:" + query) + "#" + page;
+    }
+}
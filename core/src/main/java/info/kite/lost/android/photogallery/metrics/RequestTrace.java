@@ -0,0 +1,38 @@
+package info.kite.lost.android.photogallery.metrics;
+
+/**
+ * 一次缩略图请求的计时，在请求提交时创建，随请求在线程之间传递
+ * 每次{@link #end(ThumbnailMetrics.Stage)} 记录从上一个时间点到现在的耗时
+ * 线程池与Handler 的任务交接保证了可见性，字段不需要同步
+ * <p/>
+ * Created on 2026/10/18.
+ */
+
+public class RequestTrace {
+    private final ThumbnailMetrics mMetrics;
+    private long mLastNanos;
+
+    /**
+     * 创建即开始计算排队时间
+     */
+    public RequestTrace(ThumbnailMetrics metrics) {
+        mMetrics = metrics;
+        mLastNanos = System.nanoTime();
+    }
+
+    /**
+     * 重新开始计时，之前的时间不计入任何阶段
+     */
+    public void begin() {
+        mLastNanos = System.nanoTime();
+    }
+
+    /**
+     * 结束一个阶段，同时作为下一个阶段的起点
+     */
+    public void end(ThumbnailMetrics.Stage stage) {
+        long now = System.nanoTime();
+        mMetrics.record(stage, now - mLastNanos);
+        mLastNanos = now;
+    }
+}
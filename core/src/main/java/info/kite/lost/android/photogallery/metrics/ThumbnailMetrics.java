@@ -0,0 +1,89 @@
+package info.kite.lost.android.photogallery.metrics;
+
+import java.io.PrintWriter;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * 缩略图加载各阶段的耗时分布以及下载队列的深度分布
+ * 由{@link RequestTrace} 在请求经过各个阶段时写入，dump() 输出供调试界面或dumpsys 查看
+ * <p/>
+ * Created on 2026/10/18.
+ */
+
+public class ThumbnailMetrics {
+    private static final double NANOS_PER_MILLI = 1000000.0;
+
+    /**
+     * 一次请求经过的阶段，内存命中的请求不经过任何阶段
+     */
+    public enum Stage {
+        // 在网络线程池中排队的时间
+        QUEUE_WAIT,
+        // 磁盘缓存命中时读取文件的时间
+        DISK_READ,
+        // 建立连接直到收到响应头
+        CONNECT,
+        // 读取响应体
+        TRANSFER,
+        // 采样解码，不含在解码线程池中排队的时间
+        DECODE,
+        // 从解码完成到图片设置到holder上，含主线程消息队列中的等待
+        BIND
+    }
+
+    private final Map<Stage, Histogram> mStages = new EnumMap<>(Stage.class);
+    private final Histogram mQueueDepth = new Histogram();
+
+    public ThumbnailMetrics() {
+        for (Stage stage : Stage.values()) {
+            mStages.put(stage, new Histogram());
+        }
+    }
+
+    public void record(Stage stage, long nanos) {
+        mStages.get(stage).record(nanos);
+    }
+
+    /**
+     * 每次提交请求后记录一次队列中等待的任务数
+     */
+    public void recordQueueDepth(int depth) {
+        mQueueDepth.record(depth);
+    }
+
+    public Histogram getHistogram(Stage stage) {
+        return mStages.get(stage);
+    }
+
+    public Histogram getQueueDepth() {
+        return mQueueDepth;
+    }
+
+    public void reset() {
+        for (Histogram histogram : mStages.values()) {
+            histogram.reset();
+        }
+        mQueueDepth.reset();
+    }
+
+    public void dump(String prefix, PrintWriter writer) {
+        writer.print(prefix);
+        writer.println("stage        count     p50ms     p90ms     p99ms     maxms");
+        for (Stage stage : Stage.values()) {
+            Histogram histogram = mStages.get(stage);
+            writer.print(prefix);
+            writer.println(String.format(Locale.US, "%-10s %7d %9.2f %9.2f %9.2f %9.2f",
+                    stage.name(), histogram.getCount(),
+                    histogram.getPercentile(50) / NANOS_PER_MILLI,
+                    histogram.getPercentile(90) / NANOS_PER_MILLI,
+                    histogram.getPercentile(99) / NANOS_PER_MILLI,
+                    histogram.getMax() / NANOS_PER_MILLI));
+        }
+        writer.print(prefix);
+        writer.println(String.format(Locale.US, "queue depth: p50=%d p99=%d max=%d",
+                mQueueDepth.getPercentile(50), mQueueDepth.getPercentile(99),
+                mQueueDepth.getMax()));
+    }
+}
@@ -0,0 +1,96 @@
+package info.kite.lost.android.photogallery.model;
+
+/**
+ * 元数据模型
+ * <p/>
+ * Created on 2016/10/18.
+ */
+
+public class GalleryItem {
+    private String mCaption;
+    private String mId;
+    // 默认的缩略图url，即SMALL 档位，缺少档位信息时为image_url
+    private String mUrl;
+    // 按ImageTier 顺序排列的各档位url，没有时为null
+    private String[] mTierUrls;
+    // 原图尺寸，未知时为0，网格据此在图片到达前确定单元格的高度
+    private int mWidth;
+    private int mHeight;
+    // 缩略图的平均颜色（ARGB），用作占位色，未知时为0
+    private int mColor;
+
+    public String getCaption() {
+        return mCaption;
+    }
+
+    public void setCaption(String caption) {
+        mCaption = caption;
+    }
+
+    public String getId() {
+        return mId;
+    }
+
+    public void setId(String id) {
+        mId = id;
+    }
+
+    public String getUrl() {
+        return mUrl;
+    }
+
+    public void setUrl(String url) {
+        mUrl = url;
+    }
+
+    /**
+     * @return 该档位的url，api 没有返回时为null
+     */
+    public String getTierUrl(ImageTier tier) {
+        return mTierUrls == null ? null : mTierUrls[tier.ordinal()];
+    }
+
+    public void setTierUrl(ImageTier tier, String url) {
+        if (mTierUrls == null) {
+            mTierUrls = new String[ImageTier.values().length];
+        }
+        mTierUrls[tier.ordinal()] = url;
+    }
+
+    /**
+     * @return 该档位的url，没有时退回默认的url
+     */
+    public String getUrl(ImageTier tier) {
+        String url = getTierUrl(tier);
+        return url == null ? mUrl : url;
+    }
+
+    public int getWidth() {
+        return mWidth;
+    }
+
+    public void setWidth(int width) {
+        mWidth = width;
+    }
+
+    public int getHeight() {
+        return mHeight;
+    }
+
+    public void setHeight(int height) {
+        mHeight = height;
+    }
+
+    public int getColor() {
+        return mColor;
+    }
+
+    public void setColor(int color) {
+        mColor = color;
+    }
+
+    @Override
+    public String toString() {
+        return mCaption;
+    }
+}
@@ -0,0 +1,85 @@
+package info.kite.lost.android.photogallery.model;
+
+/**
+ * 500px 提供的几种图片尺寸，列表接口一次返回所有档位的url
+ * 网格按单元格宽度和网络类型选择一个档位，并先显示最小的一档
+ * <p/>
+ * Created on 2026/10/18.
+ */
+
+public enum ImageTier {
+    // 70x70 的方形裁剪，只有几KB，用作渐进加载的第一帧
+    TINY(1, 70),
+    // 长边256 像素
+    SMALL(30, 256),
+    // 长边900 像素
+    MEDIUM(4, 900),
+    // 长边2048 像素，详情页使用
+    LARGE(2048, 2048);
+
+    /**
+     * 网络的大致类型，决定网格愿意为清晰度付出多少流量
+     */
+    public enum Network {
+        // 2G 等慢速网络
+        SLOW,
+        // 计流量的移动网络
+        METERED,
+        // wifi 等不计流量的网络
+        UNMETERED
+    }
+
+    private final int mSizeCode;
+    private final int mPixels;
+
+    ImageTier(int sizeCode, int pixels) {
+        mSizeCode = sizeCode;
+        mPixels = pixels;
+    }
+
+    /**
+     * @return api 中image_size 参数的取值
+     */
+    public int getSizeCode() {
+        return mSizeCode;
+    }
+
+    /**
+     * @return 长边的像素数
+     */
+    public int getPixels() {
+        return mPixels;
+    }
+
+    /**
+     * @return 对应的档位，未知的尺寸编号返回null
+     */
+    public static ImageTier fromSizeCode(int sizeCode) {
+        for (ImageTier tier : values()) {
+            if (tier.mSizeCode == sizeCode) {
+                return tier;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 为网格单元格选择档位
+     * 不计流量时选不小于单元格宽度的最小档位；计流量或慢速网络时用SMALL，只有很宽的单元格才用MEDIUM
+     *
+     * @param widthPx 单元格宽度
+     * @param network 当前网络类型
+     * @return SMALL 或MEDIUM
+     */
+    public static ImageTier forWidth(int widthPx, Network network) {
+        switch (network) {
+            case UNMETERED:
+                return widthPx <= SMALL.mPixels ? SMALL : MEDIUM;
+            case METERED:
+                // 手机上两列的单元格约540 像素，放大两倍左右的模糊在缩略图上可以接受
+                return widthPx <= SMALL.mPixels * 3 ? SMALL : MEDIUM;
+            default:
+                return SMALL;
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package info.kite.lost.android.photogallery.net;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * 读取整个输入流或把它写入文件的工具方法，网络响应与磁盘缓存共用
+ * <p/>
+ * Created on 2026/10/18.
+ */
+
+public class ByteStreams {
+    private static final int BUFFER_SIZE = 8 * 1024;
+    private static final int CHANNEL_BUFFER_SIZE = 32 * 1024;
+
+    // 每个工作线程一个堆外缓冲区，反复写文件时不产生任何堆上的分配
+    private static final ThreadLocal<ByteBuffer> sChannelBuffer = new ThreadLocal<ByteBuffer>() {
+        @Override
+        protected ByteBuffer initialValue() {
+            return ByteBuffer.allocateDirect(CHANNEL_BUFFER_SIZE);
+        }
+    };
+
+    private ByteStreams() {
+    }
+
+    /**
+     * 已知长度时直接读进一个正好大小的数组，省去ByteArrayOutputStream 的扩容与toByteArray() 的拷贝
+     *
+     * @param in            输入流，由调用者关闭
+     * @param contentLength 内容长度，未知时传-1
+     * @return 全部内容
+     * @throws IOException 读取失败，或已知长度时内容不完整
+     */
+    public static byte[] readFully(InputStream in, int contentLength) throws IOException {
+        if (contentLength > 0) {
+            byte[] bytes = new byte[contentLength];
+            int offset = 0;
+            int bytesRead;
+            while (offset < contentLength
+                    && (bytesRead = in.read(bytes, offset, contentLength - offset)) > 0) {
+                offset += bytesRead;
+            }
+            if (offset != contentLength) {
+                throw new IOException("unexpected end of stream: " + offset + "/" + contentLength);
+            }
+            return bytes;
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(BUFFER_SIZE);
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int bytesRead;
+        while ((bytesRead = in.read(buffer)) > 0) {
+            out.write(buffer, 0, bytesRead);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * 经由NIO channel 把输入流写入文件，只经过一个固定大小的堆外缓冲区，
+     * 不在堆上分配与内容等大的数组
+     * 不使用FileChannel.transferFrom()：旧版本Android 上它会为每次调用按count 分配堆上的缓冲区
+     *
+     * @param in             输入流，由调用者关闭
+     * @param file           目标文件，已存在时被覆盖
+     * @param expectedLength 已知的内容长度，未知时传-1
+     * @return 写入的字节数
+     * @throws IOException 读写失败，或已知长度时内容不完整
+     */
+    public static long copyToFile(InputStream in, File file, long expectedLength) throws IOException {
+        ReadableByteChannel source = Channels.newChannel(in);
+        ByteBuffer buffer = sChannelBuffer.get();
+        buffer.clear();
+        FileOutputStream out = new FileOutputStream(file);
+        long total = 0;
+        try {
+            FileChannel target = out.getChannel();
+            while (source.read(buffer) >= 0 || buffer.position() > 0) {
+                buffer.flip();
+                total += target.write(buffer);
+                buffer.compact();
+            }
+        } finally {
+            out.close();
+        }
+        if (expectedLength >= 0 && total != expectedLength) {
+            throw new IOException("unexpected end of stream: " + total + "/" + expectedLength);
+        }
+        return total;
+    }
+}
@@ -0,0 +1,58 @@
+package info.kite.lost.android.photogallery.net;
+
+import java.net.SocketTimeoutException;
+
+/**
+ * 一次请求的截止时间，从排队、建立连接、传输一直到解码都以它为准
+ * 连接与读取超时只限制单次阻塞操作，持续缓慢的传输仍可能无限拖延，截止时间限制的是总耗时
+ * <p/>
+ * Created on 2026/10/18.
+ */
+
+public class Deadline {
+    private static final long NANOS_PER_MILLI = 1000000;
+
+    private final long mExpiresAtNanos;
+
+    private Deadline(long expiresAtNanos) {
+        mExpiresAtNanos = expiresAtNanos;
+    }
+
+    /**
+     * @param millis 从现在起的毫秒数
+     */
+    public static Deadline after(long millis) {
+        return new Deadline(System.nanoTime() + millis * NANOS_PER_MILLI);
+    }
+
+    /**
+     * @return 剩余的毫秒数，已过期时为0
+     */
+    public long remainingMillis() {
+        long remaining = (mExpiresAtNanos - System.nanoTime()) / NANOS_PER_MILLI;
+        return Math.max(0, remaining);
+    }
+
+    public boolean isExpired() {
+        return mExpiresAtNanos - System.nanoTime() <= 0;
+    }
+
+    /**
+     * 换算成URLConnection 的超时，不超过cap
+     * URLConnection 的0 表示不超时，因此至少为1
+     *
+     * @param cap 单次操作的超时上限
+     */
+    public int timeoutMillis(int cap) {
+        return (int) Math.max(1, Math.min(cap, remainingMillis()));
+    }
+
+    /**
+     * @throws SocketTimeoutException 已过期
+     */
+    public void throwIfExpired() throws SocketTimeoutException {
+        if (isExpired()) {
+            throw new SocketTimeoutException("deadline exceeded");
+        }
+    }
+}
@@ -0,0 +1,226 @@
+package info.kite.lost.android.photogallery.net;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+import info.kite.lost.android.photogallery.model.GalleryItem;
+import info.kite.lost.android.photogallery.model.ImageTier;
+
+/**
+ * 500px 照片列表的流式解析器
+ * 直接从输入流中逐个读出{@link GalleryItem}，只保留需要的字段，其余字段跳过
+ * 整个响应体既不需要先读成字符串，也不需要建立完整的JSON树
+ * <p/>
+ * Created on 2026/10/18.
+ */
+
+public class GalleryItemParser {
+    private static final String TAG = "GalleryItemParser";
+    private static final String CHARSET = "UTF-8";
+
+    /**
+     * 每解析出一个item回调一次
+     */
+    public interface OnItemParsedListener {
+        void onItemParsed(GalleryItem item);
+    }
+
+    /**
+     * 将输入流中的照片列表解析进传入的List中，输入流由调用者关闭
+     *
+     * @param in    响应体，500px api 总是返回UTF-8 编码
+     * @param items list of GalleryItem
+     * @throws IOException JSON格式错误或读取失败
+     */
+    public void parse(InputStream in, final List<GalleryItem> items) throws IOException {
+        parse(new InputStreamReader(in, CHARSET), new OnItemParsedListener() {
+            @Override
+            public void onItemParsed(GalleryItem item) {
+                items.add(item);
+            }
+        });
+    }
+
+    /**
+     * 便于测试的重载
+     */
+    public List<GalleryItem> parse(Reader reader) throws IOException {
+        final List<GalleryItem> items = new ArrayList<>();
+        parse(reader, new OnItemParsedListener() {
+            @Override
+            public void onItemParsed(GalleryItem item) {
+                items.add(item);
+            }
+        });
+        return items;
+    }
+
+    /**
+     * 读取最外层对象，找到photos数组后逐个解析
+     */
+    public void parse(Reader reader, OnItemParsedListener listener) throws IOException {
+        JsonReader jsonReader = new JsonReader(reader);
+        jsonReader.beginObject();
+        while (jsonReader.hasNext()) {
+            if ("photos".equals(jsonReader.nextName())) {
+                readPhotos(jsonReader, listener);
+            } else {
+                jsonReader.skipValue();
+            }
+        }
+        jsonReader.endObject();
+    }
+
+    /**
+     * 解析/v1/photos/:id 的响应，照片位于最外层的photo 字段
+     *
+     * @param in 响应体，由调用者关闭
+     * @return 照片，不含url 时为null
+     * @throws IOException JSON格式错误或读取失败
+     */
+    public GalleryItem parsePhoto(InputStream in) throws IOException {
+        JsonReader jsonReader = new JsonReader(new InputStreamReader(in, CHARSET));
+        GalleryItem item = null;
+        jsonReader.beginObject();
+        while (jsonReader.hasNext()) {
+            if ("photo".equals(jsonReader.nextName())) {
+                item = readPhoto(jsonReader);
+            } else {
+                jsonReader.skipValue();
+            }
+        }
+        jsonReader.endObject();
+        return item == null || item.getUrl() == null ? null : item;
+    }
+
+    private void readPhotos(JsonReader jsonReader, OnItemParsedListener listener) throws IOException {
+        jsonReader.beginArray();
+        while (jsonReader.hasNext()) {
+            GalleryItem item = readPhoto(jsonReader);
+            // 存在有的JSON数据源不含url的情况
+            if (item.getUrl() != null) {
+                listener.onItemParsed(item);
+            }
+        }
+        jsonReader.endArray();
+    }
+
+    private GalleryItem readPhoto(JsonReader jsonReader) throws IOException {
+        GalleryItem item = new GalleryItem();
+        jsonReader.beginObject();
+        while (jsonReader.hasNext()) {
+            switch (jsonReader.nextName()) {
+                case "id":
+                    item.setId(nextNullableString(jsonReader));
+                    break;
+                case "description":
+                    item.setCaption(nextNullableString(jsonReader));
+                    break;
+                case "image_url":
+                    // 请求多个尺寸时是数组
+                    if (jsonReader.peek() == JsonToken.BEGIN_ARRAY) {
+                        item.setUrl(readFirstString(jsonReader));
+                    } else {
+                        item.setUrl(nextNullableString(jsonReader));
+                    }
+                    break;
+                case "images":
+                    readImages(jsonReader, item);
+                    break;
+                case "width":
+                    item.setWidth(nextNullableInt(jsonReader));
+                    break;
+                case "height":
+                    item.setHeight(nextNullableInt(jsonReader));
+                    break;
+                default:
+                    jsonReader.skipValue();
+                    break;
+            }
+        }
+        jsonReader.endObject();
+        // SMALL 档位作为默认的url，与只请求一种尺寸时的行为保持一致
+        String small = item.getTierUrl(ImageTier.SMALL);
+        if (small != null) {
+            item.setUrl(small);
+        }
+        return item;
+    }
+
+    private static String readFirstString(JsonReader jsonReader) throws IOException {
+        String first = null;
+        jsonReader.beginArray();
+        while (jsonReader.hasNext()) {
+            String value = nextNullableString(jsonReader);
+            if (first == null) {
+                first = value;
+            }
+        }
+        jsonReader.endArray();
+        return first;
+    }
+
+    /**
+     * images 数组中每个元素对应一个尺寸，优先使用https_url
+     */
+    private static void readImages(JsonReader jsonReader, GalleryItem item) throws IOException {
+        jsonReader.beginArray();
+        while (jsonReader.hasNext()) {
+            int size = 0;
+            String url = null;
+            String httpsUrl = null;
+            jsonReader.beginObject();
+            while (jsonReader.hasNext()) {
+                switch (jsonReader.nextName()) {
+                    case "size":
+                        size = nextNullableInt(jsonReader);
+                        break;
+                    case "url":
+                        url = nextNullableString(jsonReader);
+                        break;
+                    case "https_url":
+                        httpsUrl = nextNullableString(jsonReader);
+                        break;
+                    default:
+                        jsonReader.skipValue();
+                        break;
+                }
+            }
+            jsonReader.endObject();
+            ImageTier tier = ImageTier.fromSizeCode(size);
+            if (tier != null) {
+                item.setTierUrl(tier, httpsUrl != null ? httpsUrl : url);
+            }
+        }
+        jsonReader.endArray();
+    }
+
+    /**
+     * id 是数字，description 可能为null，统一读成字符串
+     */
+    private static String nextNullableString(JsonReader jsonReader) throws IOException {
+        if (jsonReader.peek() == JsonToken.NULL) {
+            jsonReader.nextNull();
+            return null;
+        }
+        return jsonReader.nextString();
+    }
+
+    /**
+     * 尺寸缺失时为0
+     */
+    private static int nextNullableInt(JsonReader jsonReader) throws IOException {
+        if (jsonReader.peek() == JsonToken.NULL) {
+            jsonReader.nextNull();
+            return 0;
+        }
+        return jsonReader.nextInt();
+    }
+}
@@ -0,0 +1,36 @@
+package info.kite.lost.android.photogallery.net;
+
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 后进先出的阻塞队列，用作{@link java.util.concurrent.ThreadPoolExecutor} 的工作队列
+ * 线程池总是从队头取任务，这里把新任务也插到队头，于是最新提交的请求最先执行
+ * <p/>
+ * Created on 2026/10/18.
+ */
+
+public class LifoBlockingDeque<E> extends LinkedBlockingDeque<E> {
+    private static final long serialVersionUID = 1L;
+
+    @Override
+    public boolean offer(E e) {
+        return offerFirst(e);
+    }
+
+    @Override
+    public boolean offer(E e, long timeout, TimeUnit unit) throws InterruptedException {
+        return offerFirst(e, timeout, unit);
+    }
+
+    @Override
+    public boolean add(E e) {
+        addFirst(e);
+        return true;
+    }
+
+    @Override
+    public void put(E e) throws InterruptedException {
+        putFirst(e);
+    }
+}
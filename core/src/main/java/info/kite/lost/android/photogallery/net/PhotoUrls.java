@@ -0,0 +1,136 @@
+package info.kite.lost.android.photogallery.net;
+
+import java.io.UnsupportedEncodingException;
+
+import info.kite.lost.android.photogallery.model.ImageTier;
+
+/**
+ * 拼接500px api 的请求链接，不依赖android.net.Uri，可以在JVM 上直接运行和测量
+ * 编码规则与Uri.encode() 一致：字母数字及 -_.!~*'() 保留，其余按UTF-8 转成%XX
+ * <p/>
+ * Created on 2026/10/18.
+ */
+
+public class PhotoUrls {
+    // 500px  的 consumer_key
+    private static final String CONSUMER_KEY = "Kku2bwsJRL4eMvKTZq1oJXjZeloWEB7WuBLMJ86r";
+    public static final String DEFAULT_ENDPOINT = "https://api.500px.com/v1";
+    private static final String PHOTOS_PATH = "/photos";
+    private static final String SEARCH_PATH = "/photos/search";
+    private static final String UNRESERVED = "-_.!~*'()";
+    private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+    // 一次请求所有档位，即 image_size[]=1&image_size[]=30...，方括号按Uri 规则编码
+    private static final String IMAGE_SIZES = imageSizes();
+
+    // api 的根地址，调试或压力测试时指向本地的替身服务器
+    private static volatile String sEndpoint = DEFAULT_ENDPOINT;
+
+    private PhotoUrls() {
+    }
+
+    /**
+     * 替换api 的根地址，之后拼出的所有链接都指向它
+     *
+     * @param endpoint 例如 http://10.0.2.2:8500/v1，末尾不带斜杠
+     */
+    public static void setEndpoint(String endpoint) {
+        sEndpoint = endpoint;
+    }
+
+    public static String getEndpoint() {
+        return sEndpoint;
+    }
+
+    /**
+     * 构建获取流行图片某一页的链接
+     *
+     * @param page     页码
+     * @param pageSize 每页数量
+     * @return string of the popular photos api
+     */
+    public static String popular(int page, int pageSize) {
+        StringBuilder builder = new StringBuilder(192)
+                .append(sEndpoint).append(PHOTOS_PATH).append("?feature=popular");
+        return appendCommon(builder, page, pageSize);
+    }
+
+    /**
+     * 构建获取关键字搜索结果某一页的链接
+     *
+     * @param query    关键词
+     * @param page     页码
+     * @param pageSize 每页数量
+     * @return string of the search photos api
+     */
+    public static String search(String query, int page, int pageSize) {
+        StringBuilder builder = new StringBuilder(192)
+                .append(sEndpoint).append(SEARCH_PATH).append("?term=");
+        encode(builder, query);
+        return appendCommon(builder, page, pageSize);
+    }
+
+    /**
+     * 构建获取单张照片的链接，详情页用它取得大尺寸图片的地址
+     *
+     * @param id        照片id
+     * @param imageSize 500px 的尺寸编号，例如2048 表示长边2048 像素
+     * @return string of the photo api
+     */
+    public static String photo(String id, int imageSize) {
+        StringBuilder builder = new StringBuilder(128)
+                .append(sEndpoint).append(PHOTOS_PATH).append('/');
+        encode(builder, id);
+        return builder.append("?image_size=").append(imageSize)
+                .append("&consumer_key=").append(CONSUMER_KEY)
+                .toString();
+    }
+
+    /**
+     * 其余参数都是固定的ASCII 字符，无需编码
+     */
+    private static String appendCommon(StringBuilder builder, int page, int pageSize) {
+        return builder.append("&page=").append(page)
+                .append("&rpp=").append(pageSize)
+                .append("&sort=rating").append(IMAGE_SIZES)
+                .append("&consumer_key=").append(CONSUMER_KEY)
+                .toString();
+    }
+
+    private static String imageSizes() {
+        StringBuilder builder = new StringBuilder();
+        for (ImageTier tier : ImageTier.values()) {
+            builder.append("&image_size%5B%5D=").append(tier.getSizeCode());
+        }
+        return builder.toString();
+    }
+
+    private static void encode(StringBuilder builder, String s) {
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (isUnreserved(c)) {
+                builder.append(c);
+                continue;
+            }
+            // 找出连续的需要编码的字符，代理对必须一起转换
+            int end = i + 1;
+            while (end < s.length() && !isUnreserved(s.charAt(end))) {
+                end++;
+            }
+            try {
+                for (byte b : s.substring(i, end).getBytes("UTF-8")) {
+                    builder.append('%')
+                            .append(HEX_DIGITS[(b >> 4) & 0xf])
+                            .append(HEX_DIGITS[b & 0xf]);
+                }
+            } catch (UnsupportedEncodingException e) {
+                throw new AssertionError(e);
+            }
+            i = end - 1;
+        }
+    }
+
+    private static boolean isUnreserved(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+                || UNRESERVED.indexOf(c) >= 0;
+    }
+}
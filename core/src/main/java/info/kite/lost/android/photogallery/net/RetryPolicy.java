@@ -0,0 +1,49 @@
+package info.kite.lost.android.photogallery.net;
+
+import java.util.Random;
+
+/**
+ * 失败请求的重试次数与退避时间，只用于可以安全重复的GET
+ * 退避采用full jitter：在指数增长的上限内均匀随机，大量客户端同时失败时不会在同一时刻一起重试
+ * <p/>
+ * Created on 2026/10/18.
+ */
+
+public class RetryPolicy {
+    // 最多三次尝试，退避上限依次为250、500ms
+    public static final RetryPolicy DEFAULT = new RetryPolicy(3, 250, 2000);
+    public static final RetryPolicy NONE = new RetryPolicy(1, 0, 0);
+
+    private final int mMaxAttempts;
+    private final long mBaseDelayMillis;
+    private final long mMaxDelayMillis;
+
+    /**
+     * @param maxAttempts     含第一次在内的最多尝试次数
+     * @param baseDelayMillis 第一次重试前退避的上限
+     * @param maxDelayMillis  任何一次退避的上限
+     */
+    public RetryPolicy(int maxAttempts, long baseDelayMillis, long maxDelayMillis) {
+        mMaxAttempts = maxAttempts;
+        mBaseDelayMillis = baseDelayMillis;
+        mMaxDelayMillis = maxDelayMillis;
+    }
+
+    public int getMaxAttempts() {
+        return mMaxAttempts;
+    }
+
+    /**
+     * @param attempt 刚刚失败的是第几次尝试，从1开始
+     * @param random  随机源
+     * @return 下一次尝试前应等待的毫秒数
+     */
+    public long backoffMillis(int attempt, Random random) {
+        // 移位不超过30，避免溢出
+        long cap = Math.min(mMaxDelayMillis, mBaseDelayMillis << Math.min(30, attempt - 1));
+        if (cap <= 0) {
+            return 0;
+        }
+        return (long) (random.nextDouble() * (cap + 1));
+    }
+}
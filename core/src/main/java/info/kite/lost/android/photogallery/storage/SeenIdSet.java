@@ -0,0 +1,156 @@
+package info.kite.lost.android.photogallery.storage;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * 容量固定的已见照片id 集合，满了之后淘汰最早加入的id
+ * id 以long 保存在开放寻址的哈希表中，另有一个按加入顺序排列的环形数组用于淘汰和持久化
+ * 不创建任何装箱对象，1024 个id 在磁盘上只占8KB
+ * <p/>
+ * Created on 2026/10/18.
+ */
+
+public class SeenIdSet {
+    // 哈希表中的空位，500px 的id 都是正数
+    private static final long EMPTY = Long.MIN_VALUE;
+
+    private final long[] mTable;
+    private final int mMask;
+    // 按加入顺序排列，mHead 指向最早的id
+    private final long[] mOrder;
+    private int mHead;
+    private int mSize;
+
+    /**
+     * @param capacity 最多保存的id 数量
+     */
+    public SeenIdSet(int capacity) {
+        mOrder = new long[capacity];
+        // 装载因子不超过 1/2，线性探测的平均探测次数很少
+        int tableSize = Integer.highestOneBit(Math.max(2, capacity) * 2 - 1) * 2;
+        mTable = new long[tableSize];
+        mMask = tableSize - 1;
+        Arrays.fill(mTable, EMPTY);
+    }
+
+    /**
+     * 把照片id 转换成集合中的键，数字id 保持原值，其它格式取64位哈希
+     */
+    public static long keyOf(String id) {
+        try {
+            long key = Long.parseLong(id);
+            if (key != EMPTY) {
+                return key;
+            }
+        } catch (NumberFormatException e) {
+            // 落到下面的哈希
+        }
+        // FNV-1a
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < id.length(); i++) {
+            hash ^= id.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash == EMPTY ? 0 : hash;
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    public int capacity() {
+        return mOrder.length;
+    }
+
+    public boolean contains(long key) {
+        return mTable[slotOf(key)] == key;
+    }
+
+    /**
+     * 加入一个id，已满时先淘汰最早的
+     *
+     * @return id 之前不在集合中时为true
+     */
+    public boolean add(long key) {
+        int slot = slotOf(key);
+        if (mTable[slot] == key) {
+            return false;
+        }
+        if (mSize == mOrder.length) {
+            removeFromTable(mOrder[mHead]);
+            mOrder[mHead] = key;
+            mHead = (mHead + 1) % mOrder.length;
+            // 淘汰可能移动了其它键，重新定位
+            slot = slotOf(key);
+        } else {
+            mOrder[(mHead + mSize) % mOrder.length] = key;
+            mSize++;
+        }
+        mTable[slot] = key;
+        return true;
+    }
+
+    /**
+     * @return key 所在的位置，不存在时为它应插入的空位
+     */
+    private int slotOf(long key) {
+        int slot = hash(key) & mMask;
+        while (mTable[slot] != EMPTY && mTable[slot] != key) {
+            slot = (slot + 1) & mMask;
+        }
+        return slot;
+    }
+
+    /**
+     * 线性探测下的删除：把后面探测链上的键前移填补空位，不使用墓碑
+     */
+    private void removeFromTable(long key) {
+        int hole = slotOf(key);
+        if (mTable[hole] != key) {
+            return;
+        }
+        mTable[hole] = EMPTY;
+        int slot = (hole + 1) & mMask;
+        while (mTable[slot] != EMPTY) {
+            int home = hash(mTable[slot]) & mMask;
+            // home 不在 (hole, slot] 区间内时，这个键可以移到空位上
+            if (((slot - home) & mMask) >= ((slot - hole) & mMask)) {
+                mTable[hole] = mTable[slot];
+                mTable[slot] = EMPTY;
+                hole = slot;
+            }
+            slot = (slot + 1) & mMask;
+        }
+    }
+
+    private static int hash(long key) {
+        // 打散连续的id
+        long h = key * 0x9e3779b97f4a7c15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    /**
+     * 按加入顺序写出，读回后淘汰顺序不变
+     */
+    public void writeTo(DataOutputStream out) throws IOException {
+        out.writeInt(mSize);
+        for (int i = 0; i < mSize; i++) {
+            out.writeLong(mOrder[(mHead + i) % mOrder.length]);
+        }
+    }
+
+    /**
+     * @param capacity 新集合的容量，小于保存的数量时只保留最新的
+     */
+    public static SeenIdSet readFrom(DataInputStream in, int capacity) throws IOException {
+        SeenIdSet set = new SeenIdSet(capacity);
+        int size = in.readInt();
+        for (int i = 0; i < size; i++) {
+            set.add(in.readLong());
+        }
+        return set;
+    }
+}
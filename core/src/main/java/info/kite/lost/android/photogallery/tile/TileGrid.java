@@ -0,0 +1,111 @@
+package info.kite.lost.android.photogallery.tile;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 大图分块的几何计算：按当前缩放选择采样率，并列出与可见区域相交的块
+ * 每一块解码后都是tileSize x tileSize 像素左右，内存占用只取决于屏幕大小，与原图分辨率无关
+ * <p/>
+ * Created on 2026/10/18.
+ */
+
+public class TileGrid {
+    private final int mImageWidth;
+    private final int mImageHeight;
+    private final int mTileSize;
+
+    /**
+     * @param imageWidth  原图宽度
+     * @param imageHeight 原图高度
+     * @param tileSize    解码后每块的边长，单位像素
+     */
+    public TileGrid(int imageWidth, int imageHeight, int tileSize) {
+        mImageWidth = imageWidth;
+        mImageHeight = imageHeight;
+        mTileSize = tileSize;
+    }
+
+    public int getImageWidth() {
+        return mImageWidth;
+    }
+
+    public int getImageHeight() {
+        return mImageHeight;
+    }
+
+    /**
+     * 选择不低于屏幕分辨率的最大采样率（2的幂），放大到原图像素以上时为1
+     *
+     * @param scale 原图像素到屏幕像素的缩放比例
+     * @return inSampleSize
+     */
+    public static int sampleSizeFor(float scale) {
+        int sampleSize = 1;
+        while (scale * sampleSize * 2 <= 1) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+    /**
+     * 列出与可见区域相交的块，坐标均为原图像素
+     *
+     * @param sampleSize 采样率
+     * @return 按行优先排列的块
+     */
+    public List<Tile> visibleTiles(int sampleSize, int left, int top, int right, int bottom) {
+        List<Tile> tiles = new ArrayList<>();
+        int span = mTileSize * sampleSize;
+        left = Math.max(0, left);
+        top = Math.max(0, top);
+        right = Math.min(mImageWidth, right);
+        bottom = Math.min(mImageHeight, bottom);
+        if (left >= right || top >= bottom) {
+            return tiles;
+        }
+        for (int row = top / span; row * span < bottom; row++) {
+            for (int col = left / span; col * span < right; col++) {
+                tiles.add(new Tile(sampleSize, col, row, col * span, row * span,
+                        Math.min(mImageWidth, (col + 1) * span),
+                        Math.min(mImageHeight, (row + 1) * span)));
+            }
+        }
+        return tiles;
+    }
+
+    /**
+     * 一个块在原图中的范围，同一采样率下的行列号唯一确定它
+     */
+    public static class Tile {
+        public final int sampleSize;
+        public final int col;
+        public final int row;
+        public final int left;
+        public final int top;
+        public final int right;
+        public final int bottom;
+
+        Tile(int sampleSize, int col, int row, int left, int top, int right, int bottom) {
+            this.sampleSize = sampleSize;
+            this.col = col;
+            this.row = row;
+            this.left = left;
+            this.top = top;
+            this.right = right;
+            this.bottom = bottom;
+        }
+
+        /**
+         * @return 用作缓存的键
+         */
+        public String key() {
+            return sampleSize + "/" + col + "/" + row;
+        }
+
+        @Override
+        public String toString() {
+            return "Tile{" + key() + "}";
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package info.kite.lost.android.photogallery.cache;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import info.kite.lost.android.photogallery.net.ByteStreams;
+
+import static org.junit.Assert.*;
+
+/**
+ * {@link DiskCache} 的本地单元测试
+ */
+public class DiskCacheTest {
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private File mDirectory;
+
+    @Before
+    public void setUp() throws Exception {
+        mDirectory = mFolder.newFolder("thumbnails");
+    }
+
+    @Test
+    public void putThenGet_returnsSameBytes() throws Exception {
+        DiskCache cache = new DiskCache(mDirectory, 1024);
+        put(cache, "https://example.com/a.jpg", new byte[]{1, 2, 3});
+
+        assertArrayEquals(new byte[]{1, 2, 3}, read(cache.getFile("https://example.com/a.jpg")));
+        assertNull(cache.getFile("https://example.com/b.jpg"));
+        assertEquals(3, cache.size());
+    }
+
+    @Test
+    public void overSize_evictsLeastRecentlyUsed() throws Exception {
+        DiskCache cache = new DiskCache(mDirectory, 10);
+        put(cache, "a", new byte[4]);
+        put(cache, "b", new byte[4]);
+        // 访问a使b成为最久未使用
+        cache.getFile("a");
+        put(cache, "c", new byte[4]);
+
+        assertTrue(cache.contains("a"));
+        assertFalse(cache.contains("b"));
+        assertTrue(cache.contains("c"));
+        assertEquals(8, cache.size());
+    }
+
+    @Test
+    public void reopen_restoresEntries() throws Exception {
+        put(new DiskCache(mDirectory, 1024), "a", new byte[]{7});
+
+        DiskCache reopened = new DiskCache(mDirectory, 1024);
+        assertArrayEquals(new byte[]{7}, read(reopened.getFile("a")));
+        assertEquals(1, reopened.size());
+    }
+
+    @Test
+    public void putStream_thenGetFile() throws Exception {
+        DiskCache cache = new DiskCache(mDirectory, 1024);
+        byte[] content = new byte[800];
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) i;
+        }
+        File file = cache.put("a", new ByteArrayInputStream(content), content.length);
+
+        assertEquals(file, cache.getFile("a"));
+        assertArrayEquals(content, read(file));
+        assertEquals(content.length, cache.size());
+        assertNull(cache.getFile("b"));
+        // 只剩下缓存文件，没有残留的临时文件
+        assertEquals(1, mDirectory.list().length);
+    }
+
+    @Test
+    public void putStream_truncatedLeavesNothing() throws Exception {
+        DiskCache cache = new DiskCache(mDirectory, 1024);
+        try {
+            cache.put("a", new ByteArrayInputStream(new byte[10]), 20);
+            fail();
+        } catch (IOException expected) {
+            // 连接中途断开
+        }
+        assertFalse(cache.contains("a"));
+        assertEquals(0, mDirectory.list().length);
+    }
+
+    private static File put(DiskCache cache, String url, byte[] bytes) throws IOException {
+        return cache.put(url, new ByteArrayInputStream(bytes), bytes.length);
+    }
+
+    private static byte[] read(File file) throws IOException {
+        InputStream in = new FileInputStream(file);
+        try {
+            return ByteStreams.readFully(in, (int) file.length());
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package info.kite.lost.android.photogallery.cache;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+
+import static org.junit.Assert.*;
+
+/**
+ * {@link PackStore} 的本地单元测试
+ */
+public class PackStoreTest {
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private File mFile;
+
+    @Before
+    public void setUp() throws Exception {
+        mFile = new File(mFolder.getRoot(), "thumbnails.pack");
+    }
+
+    @Test
+    public void putThenGet_survivesReopen() throws Exception {
+        PackStore store = new PackStore(mFile, 1024 * 1024);
+        store.put("a", new byte[]{1, 2, 3});
+        store.put("b", new byte[]{4});
+        store.put("a", new byte[]{5, 6});
+        store.remove("b");
+        store.close();
+
+        PackStore reopened = new PackStore(mFile, 1024 * 1024);
+        assertArrayEquals(new byte[]{5, 6}, reopened.get("a"));
+        assertNull(reopened.get("b"));
+        assertEquals(1, reopened.count());
+        assertEquals(mFile.length(), reopened.size());
+    }
+
+    @Test
+    public void truncatedTail_isDroppedOnReopen() throws Exception {
+        PackStore store = new PackStore(mFile, 1024 * 1024);
+        store.put("a", new byte[]{1});
+        store.put("b", new byte[100]);
+        store.close();
+        // 模拟写到一半时进程被杀
+        RandomAccessFile file = new RandomAccessFile(mFile, "rw");
+        file.setLength(file.length() - 10);
+        file.close();
+
+        PackStore reopened = new PackStore(mFile, 1024 * 1024);
+        assertArrayEquals(new byte[]{1}, reopened.get("a"));
+        assertFalse(reopened.contains("b"));
+        // 之后的写入接在有效内容后面
+        reopened.put("c", new byte[]{2});
+        reopened.close();
+        assertArrayEquals(new byte[]{2}, new PackStore(mFile, 1024 * 1024).get("c"));
+    }
+
+    @Test
+    public void corruptData_isRemoved() throws Exception {
+        PackStore store = new PackStore(mFile, 1024 * 1024);
+        store.put("a", new byte[]{1, 2, 3});
+        store.close();
+        RandomAccessFile file = new RandomAccessFile(mFile, "rw");
+        file.seek(file.length() - 1);
+        file.write(9);
+        file.close();
+
+        PackStore reopened = new PackStore(mFile, 1024 * 1024);
+        assertNull(reopened.get("a"));
+        assertFalse(reopened.contains("a"));
+    }
+
+    @Test
+    public void overSize_compactsAndDropsLeastRecentlyUsed() throws Exception {
+        // 每条记录 16 字节头 + 1 字节key + 120 字节数据，第三条超出上限
+        PackStore store = new PackStore(mFile, 400);
+        store.put("a", new byte[120]);
+        store.put("b", new byte[120]);
+        // 访问a使b成为最久未使用
+        store.get("a");
+        store.put("c", new byte[120]);
+
+        assertFalse(store.contains("b"));
+        assertTrue(store.contains("a"));
+        assertTrue(store.contains("c"));
+        assertEquals(store.liveSize(), store.size());
+        assertTrue(store.size() <= 400);
+        store.close();
+
+        PackStore reopened = new PackStore(mFile, 400);
+        assertEquals(2, reopened.count());
+        assertArrayEquals(new byte[120], reopened.get("c"));
+    }
+}
@@ -0,0 +1,67 @@
+package info.kite.lost.android.photogallery.cache;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import info.kite.lost.android.photogallery.model.GalleryItem;
+
+import static org.junit.Assert.*;
+
+/**
+ * {@link QueryResultCache} 的本地单元测试
+ */
+public class QueryResultCacheTest {
+
+    @Test
+    public void get_returnsCopyUntilExpired() {
+        QueryResultCache cache = new QueryResultCache(4, 1000);
+        List<GalleryItem> items = items("1", "2");
+        cache.put("cat", 1, items, 0);
+        items.clear();
+
+        List<GalleryItem> cached = cache.get("cat", 1, 999);
+        assertEquals(2, cached.size());
+        cached.clear();
+        assertEquals(2, cache.get("cat", 1, 999).size());
+
+        assertNull(cache.get("cat", 1, 1000));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void keys_distinguishQueryAndPage() {
+        QueryResultCache cache = new QueryResultCache(4, 1000);
+        cache.put(null, 1, items("popular"), 0);
+        cache.put("cat", 2, items("cat"), 0);
+
+        assertEquals("popular", cache.get(null, 1, 0).get(0).getId());
+        assertNull(cache.get("", 1, 0));
+        assertNull(cache.get("cat", 1, 0));
+        assertEquals("cat", cache.get("cat", 2, 0).get(0).getId());
+    }
+
+    @Test
+    public void overCapacity_evictsLeastRecentlyUsed() {
+        QueryResultCache cache = new QueryResultCache(2, 1000);
+        cache.put("a", 1, items("a"), 0);
+        cache.put("b", 1, items("b"), 0);
+        cache.get("a", 1, 0);
+        cache.put("c", 1, items("c"), 0);
+
+        assertNotNull(cache.get("a", 1, 0));
+        assertNull(cache.get("b", 1, 0));
+        assertNotNull(cache.get("c", 1, 0));
+    }
+
+    private static List<GalleryItem> items(String... ids) {
+        List<GalleryItem> items = new ArrayList<>();
+        for (String id : ids) {
+            GalleryItem item = new GalleryItem();
+            item.setId(id);
+            items.add(item);
+        }
+        return items;
+    }
+}
@@ -0,0 +1,49 @@
+package info.kite.lost.android.photogallery.metrics;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * {@link Histogram} 的本地单元测试
+ */
+public class HistogramTest {
+
+    @Test
+    public void buckets_coverValueWithinOneEighth() {
+        long[] values = {0, 1, 7, 8, 15, 16, 1000, 123456789, Long.MAX_VALUE};
+        for (long value : values) {
+            long upper = Histogram.upperBoundOf(Histogram.indexOf(value));
+            assertTrue(value + " -> " + upper, upper >= value);
+            assertTrue(value + " -> " + upper, upper - value <= value / 8);
+        }
+    }
+
+    @Test
+    public void percentile_isNeverUnderestimated() {
+        Histogram histogram = new Histogram();
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i * 1000L);
+        }
+
+        assertEquals(1000, histogram.getCount());
+        assertEquals(1000000, histogram.getMax());
+        assertEquals(500500, histogram.getMean(), 0.001);
+        long p50 = histogram.getPercentile(50);
+        assertTrue(String.valueOf(p50), p50 >= 500000 && p50 <= 500000 * 9 / 8);
+        long p99 = histogram.getPercentile(99);
+        assertTrue(String.valueOf(p99), p99 >= 990000 && p99 <= 1000000);
+        assertEquals(1000000, histogram.getPercentile(100));
+    }
+
+    @Test
+    public void reset_clearsEverything() {
+        Histogram histogram = new Histogram();
+        histogram.record(42);
+        histogram.reset();
+
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getPercentile(50));
+        assertEquals(0, histogram.getMax());
+    }
+}
@@ -0,0 +1,26 @@
+package info.kite.lost.android.photogallery.model;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * {@link ImageTier} 的本地单元测试
+ */
+public class ImageTierTest {
+
+    @Test
+    public void forWidth_tradesSharpnessForBytesOffWifi() {
+        assertEquals(ImageTier.SMALL, ImageTier.forWidth(200, ImageTier.Network.UNMETERED));
+        assertEquals(ImageTier.MEDIUM, ImageTier.forWidth(540, ImageTier.Network.UNMETERED));
+        assertEquals(ImageTier.SMALL, ImageTier.forWidth(540, ImageTier.Network.METERED));
+        assertEquals(ImageTier.MEDIUM, ImageTier.forWidth(800, ImageTier.Network.METERED));
+        assertEquals(ImageTier.SMALL, ImageTier.forWidth(800, ImageTier.Network.SLOW));
+    }
+
+    @Test
+    public void fromSizeCode() {
+        assertEquals(ImageTier.MEDIUM, ImageTier.fromSizeCode(4));
+        assertNull(ImageTier.fromSizeCode(3));
+    }
+}
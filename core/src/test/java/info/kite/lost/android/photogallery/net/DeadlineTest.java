@@ -0,0 +1,32 @@
+package info.kite.lost.android.photogallery.net;
+
+import org.junit.Test;
+
+import java.net.SocketTimeoutException;
+
+import static org.junit.Assert.*;
+
+/**
+ * {@link Deadline} 的本地单元测试
+ */
+public class DeadlineTest {
+
+    @Test
+    public void timeoutMillis_cappedAndNeverZero() throws Exception {
+        Deadline far = Deadline.after(60 * 1000);
+        assertFalse(far.isExpired());
+        assertEquals(5000, far.timeoutMillis(5000));
+        far.throwIfExpired();
+
+        Deadline past = Deadline.after(-1);
+        assertTrue(past.isExpired());
+        assertEquals(0, past.remainingMillis());
+        // 0 对URLConnection 意味着不超时
+        assertEquals(1, past.timeoutMillis(5000));
+    }
+
+    @Test(expected = SocketTimeoutException.class)
+    public void throwIfExpired() throws Exception {
+        Deadline.after(0).throwIfExpired();
+    }
+}
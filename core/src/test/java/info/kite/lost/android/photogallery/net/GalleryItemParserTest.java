@@ -0,0 +1,73 @@
+package info.kite.lost.android.photogallery.net;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import info.kite.lost.android.photogallery.model.GalleryItem;
+import info.kite.lost.android.photogallery.model.ImageTier;
+
+import static org.junit.Assert.*;
+
+/**
+ * {@link GalleryItemParser} 的本地单元测试，样本为500px /v1/photos 格式的响应
+ */
+public class GalleryItemParserTest {
+
+    @Test
+    public void parse_readsOnlyPhotosWithUrl() throws Exception {
+        List<GalleryItem> items = new ArrayList<>();
+        InputStream in = getClass().getClassLoader().getResourceAsStream("photos_popular.json");
+        try {
+            new GalleryItemParser().parse(in, items);
+        } finally {
+            in.close();
+        }
+
+        // 第5张照片没有image_url
+        assertEquals(5, items.size());
+        GalleryItem first = items.get(0);
+        assertEquals("180000000", first.getId());
+        assertEquals("Shot on a quiet morning #0", first.getCaption());
+        assertTrue(first.getUrl().startsWith("https://drscdn.500px.org/photo/180000000/"));
+        assertEquals(2048, first.getWidth());
+        assertEquals(1365, first.getHeight());
+        // description 为null
+        assertNull(items.get(2).getCaption());
+    }
+
+    @Test
+    public void parsePhoto_readsSinglePhoto() throws Exception {
+        String json = "{\"photo\":{\"id\":42,\"description\":\"big\","
+                + "\"image_url\":\"https://drscdn.500px.org/photo/42/m%3D2048/v2\"},\"comments\":[]}";
+        GalleryItem item = new GalleryItemParser()
+                .parsePhoto(new ByteArrayInputStream(json.getBytes("UTF-8")));
+        assertEquals("42", item.getId());
+        assertEquals("https://drscdn.500px.org/photo/42/m%3D2048/v2", item.getUrl());
+    }
+
+    @Test
+    public void parse_readsSizeTiers() throws Exception {
+        String json = "{\"photos\":[{\"id\":7,\"image_url\":[\"http://a/1\",\"http://a/30\"],"
+                + "\"images\":[{\"size\":1,\"url\":\"http://a/1\",\"https_url\":\"https://a/1\"},"
+                + "{\"size\":30,\"url\":\"http://a/30\",\"https_url\":\"https://a/30\"},"
+                + "{\"size\":440,\"url\":\"http://a/440\"}]}]}";
+        GalleryItem item = new GalleryItemParser().parse(new StringReader(json)).get(0);
+        assertEquals("https://a/1", item.getTierUrl(ImageTier.TINY));
+        // SMALL 档位成为默认url
+        assertEquals("https://a/30", item.getUrl());
+        assertNull(item.getTierUrl(ImageTier.MEDIUM));
+        assertEquals("https://a/30", item.getUrl(ImageTier.MEDIUM));
+    }
+
+    @Test
+    public void parse_emptyPhotos() throws Exception {
+        List<GalleryItem> items = new GalleryItemParser()
+                .parse(new StringReader("{\"current_page\":9,\"photos\":[],\"filters\":{}}"));
+        assertTrue(items.isEmpty());
+    }
+}
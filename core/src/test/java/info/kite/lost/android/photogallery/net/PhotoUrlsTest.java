@@ -0,0 +1,48 @@
+package info.kite.lost.android.photogallery.net;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * {@link PhotoUrls} 的本地单元测试，期望值取自Uri.Builder 拼出的链接
+ */
+public class PhotoUrlsTest {
+    private static final String COMMON =
+            "&sort=rating&image_size%5B%5D=1&image_size%5B%5D=30&image_size%5B%5D=4"
+                    + "&image_size%5B%5D=2048&consumer_key=Kku2bwsJRL4eMvKTZq1oJXjZeloWEB7WuBLMJ86r";
+
+    @Test
+    public void popular_appendsPaging() {
+        assertEquals("https://api.500px.com/v1/photos?feature=popular&page=1&rpp=5" + COMMON,
+                PhotoUrls.popular(1, 5));
+    }
+
+    @Test
+    public void search_encodesLikeUri() {
+        // 空格编码为%20，保留字符与非ASCII 字符按UTF-8 编码，代理对整体编码
+        assertEquals("https://api.500px.com/v1/photos/search?term="
+                        + "%E5%B1%B1%20%E6%B9%96%E6%B3%8A%2Fa%2Bb%26c~'%C3%A9%F0%9F%98%80"
+                        + "&page=2&rpp=30" + COMMON,
+                PhotoUrls.search("山 湖泊/a+b&c~'é😀", 2, 30));
+    }
+
+    @Test
+    public void photo_requestsSize() {
+        assertEquals("https://api.500px.com/v1/photos/42?image_size=2048"
+                        + "&consumer_key=Kku2bwsJRL4eMvKTZq1oJXjZeloWEB7WuBLMJ86r",
+                PhotoUrls.photo("42", 2048));
+    }
+
+    @Test
+    public void setEndpoint_redirectsAllRequests() {
+        PhotoUrls.setEndpoint("http://127.0.0.1:8500/v1");
+        try {
+            assertEquals("http://127.0.0.1:8500/v1/photos?feature=popular&page=1&rpp=5" + COMMON,
+                    PhotoUrls.popular(1, 5));
+            assertTrue(PhotoUrls.photo("42", 2048).startsWith("http://127.0.0.1:8500/v1/photos/42?"));
+        } finally {
+            PhotoUrls.setEndpoint(PhotoUrls.DEFAULT_ENDPOINT);
+        }
+    }
+}
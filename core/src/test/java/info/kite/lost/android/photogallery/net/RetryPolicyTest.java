@@ -0,0 +1,44 @@
+package info.kite.lost.android.photogallery.net;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * {@link RetryPolicy} 的本地单元测试
+ */
+public class RetryPolicyTest {
+
+    @Test
+    public void backoff_staysWithinExponentialCap() {
+        RetryPolicy policy = new RetryPolicy(5, 100, 300);
+        Random random = new Random(42);
+        long[] caps = {100, 200, 300, 300};
+        for (int attempt = 1; attempt <= caps.length; attempt++) {
+            for (int i = 0; i < 1000; i++) {
+                long delay = policy.backoffMillis(attempt, random);
+                assertTrue(delay >= 0 && delay <= caps[attempt - 1]);
+            }
+        }
+    }
+
+    @Test
+    public void backoff_isJittered() {
+        RetryPolicy policy = new RetryPolicy(3, 1000, 1000);
+        Random random = new Random(7);
+        long first = policy.backoffMillis(1, random);
+        boolean differs = false;
+        for (int i = 0; i < 10 && !differs; i++) {
+            differs = policy.backoffMillis(1, random) != first;
+        }
+        assertTrue(differs);
+    }
+
+    @Test
+    public void none_neverWaits() {
+        assertEquals(1, RetryPolicy.NONE.getMaxAttempts());
+        assertEquals(0, RetryPolicy.NONE.backoffMillis(1, new Random()));
+    }
+}
@@ -0,0 +1,60 @@
+package info.kite.lost.android.photogallery.storage;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * {@link SeenIdSet} 的本地单元测试
+ */
+public class SeenIdSetTest {
+
+    @Test
+    public void add_reportsOnlyNewIds() {
+        SeenIdSet set = new SeenIdSet(8);
+        assertTrue(set.add(SeenIdSet.keyOf("180000000")));
+        assertFalse(set.add(SeenIdSet.keyOf("180000000")));
+        assertTrue(set.contains(180000000L));
+        assertEquals(SeenIdSet.keyOf("abc"), SeenIdSet.keyOf("abc"));
+        assertEquals(1, set.size());
+    }
+
+    @Test
+    public void add_evictsOldestWhenFull() {
+        SeenIdSet set = new SeenIdSet(100);
+        for (long id = 1; id <= 1000; id++) {
+            set.add(id);
+            // 每次淘汰后其余的键依然可以找到
+            assertTrue(set.contains(id));
+        }
+        assertEquals(100, set.size());
+        assertFalse(set.contains(900));
+        for (long id = 901; id <= 1000; id++) {
+            assertTrue(String.valueOf(id), set.contains(id));
+        }
+    }
+
+    @Test
+    public void writeTo_roundTripsInOrder() throws Exception {
+        SeenIdSet set = new SeenIdSet(4);
+        for (long id = 1; id <= 6; id++) {
+            set.add(id);
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        set.writeTo(new DataOutputStream(bytes));
+
+        SeenIdSet read = SeenIdSet.readFrom(
+                new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())), 4);
+        assertEquals(4, read.size());
+        assertFalse(read.contains(2));
+        // 最早的3 最先被淘汰
+        read.add(7);
+        assertFalse(read.contains(3));
+        assertTrue(read.contains(4));
+    }
+}
@@ -0,0 +1,46 @@
+package info.kite.lost.android.photogallery.tile;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * {@link TileGrid} 的本地单元测试
+ */
+public class TileGridTest {
+
+    @Test
+    public void sampleSize_neverBelowScreenResolution() {
+        assertEquals(1, TileGrid.sampleSizeFor(2f));
+        assertEquals(1, TileGrid.sampleSizeFor(1f));
+        assertEquals(1, TileGrid.sampleSizeFor(0.6f));
+        assertEquals(2, TileGrid.sampleSizeFor(0.5f));
+        assertEquals(4, TileGrid.sampleSizeFor(0.2f));
+    }
+
+    @Test
+    public void visibleTiles_clippedToImage() {
+        TileGrid grid = new TileGrid(1000, 700, 256);
+        // 采样率为2 时每块覆盖原图512 像素
+        List<TileGrid.Tile> tiles = grid.visibleTiles(2, -50, -50, 5000, 5000);
+        assertEquals(4, tiles.size());
+        TileGrid.Tile last = tiles.get(3);
+        assertEquals("2/1/1", last.key());
+        assertEquals(512, last.left);
+        assertEquals(1000, last.right);
+        assertEquals(700, last.bottom);
+    }
+
+    @Test
+    public void visibleTiles_onlyIntersecting() {
+        TileGrid grid = new TileGrid(4096, 4096, 256);
+        List<TileGrid.Tile> tiles = grid.visibleTiles(1, 300, 300, 600, 500);
+        // 列1-2，行1
+        assertEquals(2, tiles.size());
+        assertEquals("1/1/1", tiles.get(0).key());
+        assertEquals("1/2/1", tiles.get(1).key());
+        assertTrue(grid.visibleTiles(1, 5000, 0, 6000, 100).isEmpty());
+    }
+}
@@ -0,0 +1,84 @@
+package info.kite.lost.android.photogallery.loadtest;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import info.kite.lost.android.photogallery.model.GalleryItem;
+import info.kite.lost.android.photogallery.net.Deadline;
+import info.kite.lost.android.photogallery.net.GalleryItemParser;
+import info.kite.lost.android.photogallery.net.PhotoUrls;
+
+/**
+ * 列表请求：多个客户端并发地逐页获取流行照片和搜索结果，直到返回空页
+ * 每页都经过{@link GalleryItemParser} 解析，耗时包含解析
+ * <p/>
+ * Created on 2026/10/18.
+ */
+
+class FetchScenario implements Scenario {
+    // 与PhotoFetcher.PAGE_SIZE 一致
+    private static final int PAGE_SIZE = 30;
+    // 与HttpClient.DEFAULT_DEADLINE_MILLIS 一致
+    private static final long DEADLINE_MILLIS = 20 * 1000;
+    private static final String[] QUERIES = {null, "landscape", "city"};
+
+    private final int mClients;
+
+    FetchScenario(int clients) {
+        mClients = clients;
+    }
+
+    @Override
+    public String getName() {
+        return "fetch";
+    }
+
+    @Override
+    public void run(final LoadClient client, final ScenarioResult result) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(mClients);
+        try {
+            List<Future<Void>> futures = new ArrayList<>();
+            for (int i = 0; i < mClients; i++) {
+                final String query = QUERIES[i % QUERIES.length];
+                futures.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        fetchAllPages(client, result, query);
+                        return null;
+                    }
+                }));
+            }
+            for (Future<Void> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static void fetchAllPages(LoadClient client, ScenarioResult result, String query) {
+        for (int page = 1; ; page++) {
+            String url = query == null ? PhotoUrls.popular(page, PAGE_SIZE)
+                    : PhotoUrls.search(query, page, PAGE_SIZE);
+            long start = System.nanoTime();
+            List<GalleryItem> items = new ArrayList<>();
+            try {
+                byte[] body = client.get(url, Deadline.after(DEADLINE_MILLIS));
+                new GalleryItemParser().parse(new ByteArrayInputStream(body), items);
+            } catch (Exception e) {
+                result.counter("page_errors").incrementAndGet();
+                continue;
+            }
+            result.latency("page").record(System.nanoTime() - start);
+            if (items.isEmpty()) {
+                return;
+            }
+            result.counter("items").addAndGet(items.size());
+        }
+    }
+}
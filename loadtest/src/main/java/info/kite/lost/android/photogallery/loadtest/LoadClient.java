@@ -0,0 +1,198 @@
+package info.kite.lost.android.photogallery.loadtest;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import info.kite.lost.android.photogallery.net.ByteStreams;
+import info.kite.lost.android.photogallery.net.Deadline;
+import info.kite.lost.android.photogallery.net.RetryPolicy;
+
+/**
+ * JVM 上的HTTP 客户端，与app 中HttpClient 的规则一致：
+ * 连接与读取超时受截止时间限制，到期时断开连接，失败的GET 在截止时间内按{@link RetryPolicy} 重试
+ * 同时统计请求数、重试次数、失败次数和收到的字节数
+ * <p/>
+ * Created on 2026/10/18.
+ */
+
+class LoadClient {
+    private static final int CONNECT_TIMEOUT_MILLIS = 10 * 1000;
+    private static final int READ_TIMEOUT_MILLIS = 15 * 1000;
+
+    private static final ScheduledExecutorService sWatchdog =
+            Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "LoadClient-watchdog");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+    private final RetryPolicy mRetryPolicy;
+    private final Random mRandom = new Random();
+    private final AtomicLong mRequests = new AtomicLong();
+    private final AtomicLong mRetries = new AtomicLong();
+    private final AtomicLong mFailures = new AtomicLong();
+    private final AtomicLong mBytes = new AtomicLong();
+
+    LoadClient(RetryPolicy retryPolicy) {
+        mRetryPolicy = retryPolicy;
+    }
+
+    /**
+     * 读取响应体的方式，与app 中HttpClient.BodyReader 相同，每次尝试都从头处理
+     */
+    interface BodyReader<T> {
+        T read(InputStream in, int contentLength) throws IOException;
+    }
+
+    private static final BodyReader<byte[]> BYTES = new BodyReader<byte[]>() {
+        @Override
+        public byte[] read(InputStream in, int contentLength) throws IOException {
+            return ByteStreams.readFully(in, contentLength);
+        }
+    };
+
+    /**
+     * @return 响应体，所有尝试都失败时抛出最后一次的异常
+     */
+    byte[] get(String url, Deadline deadline) throws IOException {
+        return get(url, deadline, BYTES);
+    }
+
+    /**
+     * @return reader 的结果，所有尝试都失败时抛出最后一次的异常
+     */
+    <T> T get(String url, Deadline deadline, BodyReader<T> reader) throws IOException {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return getOnce(url, deadline, reader);
+            } catch (IOException e) {
+                long delay = mRetryPolicy.backoffMillis(attempt, mRandom);
+                if (attempt >= mRetryPolicy.getMaxAttempts() || delay >= deadline.remainingMillis()
+                        || isClientError(e)) {
+                    mFailures.incrementAndGet();
+                    throw e;
+                }
+                mRetries.incrementAndGet();
+                try {
+                    Thread.sleep(delay);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    throw e;
+                }
+            }
+        }
+    }
+
+    private <T> T getOnce(String url, Deadline deadline, BodyReader<T> reader) throws IOException {
+        mRequests.incrementAndGet();
+        deadline.throwIfExpired();
+        final HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        connection.setConnectTimeout(deadline.timeoutMillis(CONNECT_TIMEOUT_MILLIS));
+        connection.setReadTimeout(deadline.timeoutMillis(READ_TIMEOUT_MILLIS));
+        ScheduledFuture<?> watchdog = sWatchdog.schedule(new Runnable() {
+            @Override
+            public void run() {
+                connection.disconnect();
+            }
+        }, deadline.remainingMillis(), TimeUnit.MILLISECONDS);
+        try {
+            int status = connection.getResponseCode();
+            if (status != HttpURLConnection.HTTP_OK) {
+                throw new StatusException(status);
+            }
+            InputStream in = new CountingInputStream(connection.getInputStream());
+            try {
+                return reader.read(in, connection.getContentLength());
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            connection.disconnect();
+            if (deadline.isExpired() && !(e instanceof SocketTimeoutException)) {
+                SocketTimeoutException timeout = new SocketTimeoutException("deadline exceeded");
+                timeout.initCause(e);
+                throw timeout;
+            }
+            throw e;
+        } finally {
+            watchdog.cancel(false);
+        }
+    }
+
+    /**
+     * 统计收到的字节数，reader 不必自己计数
+     */
+    private class CountingInputStream extends FilterInputStream {
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                mBytes.incrementAndGet();
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int count) throws IOException {
+            int n = super.read(buffer, offset, count);
+            if (n > 0) {
+                mBytes.addAndGet(n);
+            }
+            return n;
+        }
+    }
+
+    private static boolean isClientError(IOException e) {
+        if (!(e instanceof StatusException)) {
+            return false;
+        }
+        int status = ((StatusException) e).mStatus;
+        return status >= 400 && status < 500 && status != HttpURLConnection.HTTP_CLIENT_TIMEOUT
+                && status != 429;
+    }
+
+    long getRequests() {
+        return mRequests.get();
+    }
+
+    long getRetries() {
+        return mRetries.get();
+    }
+
+    long getFailures() {
+        return mFailures.get();
+    }
+
+    long getBytes() {
+        return mBytes.get();
+    }
+
+    private static class StatusException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        final int mStatus;
+
+        StatusException(int status) {
+            super("HTTP " + status);
+            mStatus = status;
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package info.kite.lost.android.photogallery.loadtest;
+
+import com.google.gson.GsonBuilder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import info.kite.lost.android.photogallery.model.ImageTier;
+import info.kite.lost.android.photogallery.net.PhotoUrls;
+import info.kite.lost.android.photogallery.net.RetryPolicy;
+
+/**
+ * 压力测试的入口：启动替身服务器，依次运行选定的场景，输出吞吐、耗时百分位和流量
+ * <pre>
+ * --scenario=fetch,scroll,poll   要运行的场景，按顺序执行
+ * --endpoint=URL                 不启动替身服务器，改为访问这个根地址
+ * --serve [--port=8500]          只启动替身服务器，供模拟器上的调试版本连接
+ * --json=FILE                    另外把结果写成JSON，便于与之前的结果比较
+ * --no-retry                     关闭重试，观察未经处理的错误率
+ * 服务器：--latency --jitter --tail-rate --tail-latency --bandwidth --error-rate --pages --seed
+ * 场景：--clients --passes --page-interval --tier --polls
+ * </pre>
+ * Created on 2026/10/18.
+ */
+
+public class LoadTest {
+    private static final int DEFAULT_PORT = 8500;
+
+    public static void main(String[] args) throws Exception {
+        Options options = Options.parse(args);
+        MockPhotoServer.Config config = MockPhotoServer.Config.from(options);
+
+        if (options.has("serve")) {
+            MockPhotoServer server = new MockPhotoServer(config);
+            server.start(options.getInt("port", DEFAULT_PORT));
+            System.out.println("serving " + server.getEndpoint() + " (" + config + ")");
+            // 服务线程不是守护线程，进程一直运行到被终止
+            return;
+        }
+
+        MockPhotoServer server = null;
+        String endpoint = options.getString("endpoint", null);
+        if (endpoint == null) {
+            server = new MockPhotoServer(config);
+            server.start(0);
+            endpoint = server.getEndpoint();
+            System.out.println("mock server: " + config);
+        }
+        PhotoUrls.setEndpoint(endpoint);
+        RetryPolicy retryPolicy = options.has("no-retry") ? RetryPolicy.NONE : RetryPolicy.DEFAULT;
+
+        List<Map<String, Object>> results = new ArrayList<>();
+        try {
+            for (String name : options.getString("scenario", "fetch,scroll,poll").split(",")) {
+                Scenario scenario = create(name.trim(), options, config);
+                // 每个场景一个客户端，请求统计互不混淆
+                LoadClient client = new LoadClient(retryPolicy);
+                ScenarioResult result = new ScenarioResult(scenario.getName());
+                result.start();
+                scenario.run(client, result);
+                result.finish(client);
+                result.print(System.out);
+                results.add(result.toMap());
+            }
+        } finally {
+            if (server != null) {
+                System.out.println("server: " + server.getRequestCount() + " requests, "
+                        + server.getErrorCount() + " injected errors, "
+                        + server.getBytesSent() + " bytes sent");
+                server.stop();
+            }
+        }
+
+        String json = options.getString("json", null);
+        if (json != null) {
+            Map<String, Object> report = new LinkedHashMap<>();
+            report.put("endpoint", endpoint);
+            report.put("server", config.toString());
+            report.put("results", results);
+            writeJson(new File(json), report);
+        }
+    }
+
+    private static Scenario create(String name, Options options, MockPhotoServer.Config config) {
+        switch (name) {
+            case "fetch":
+                return new FetchScenario(options.getInt("clients", 4));
+            case "scroll":
+                return new ScrollScenario(options.getInt("passes", 2),
+                        options.getLong("page-interval", 500),
+                        ImageTier.valueOf(options.getString("tier", ImageTier.SMALL.name())));
+            case "poll":
+                return new PollScenario(options.getInt("polls", 20), config.mPageCount);
+            default:
+                throw new IllegalArgumentException("unknown scenario: " + name);
+        }
+    }
+
+    private static void writeJson(File file, Object report) throws IOException {
+        Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        try {
+            new GsonBuilder().setPrettyPrinting().disableHtmlEscaping().create().toJson(report, writer);
+        } finally {
+            writer.close();
+        }
+    }
+}
@@ -0,0 +1,395 @@
+package info.kite.lost.android.photogallery.loadtest;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.imageio.ImageIO;
+
+import info.kite.lost.android.photogallery.model.ImageTier;
+
+/**
+ * 500px api 的本地替身，回放录制的列表响应与图片
+ * <ul>
+ * <li>/v1/photos、/v1/photos/search 以录制的照片为模板生成任意页，id 按页码和位置递增，不会重复</li>
+ * <li>/v1/photos/{id} 返回单张照片，供详情页使用</li>
+ * <li>/images/{id}/{size}.jpg 返回按档位缩放的样本JPEG，字节数与真实的各档位大致相当</li>
+ * </ul>
+ * 每个响应都按配置注入延迟、长尾、错误并限制带宽，同样的种子得到同样的分布
+ * <p/>
+ * Created on 2026/10/18.
+ */
+
+public class MockPhotoServer {
+    private static final String API_PREFIX = "/v1";
+    private static final String IMAGE_PREFIX = "/images/";
+    private static final String PHOTOS_JSON = "photos_popular.json";
+    private static final String PHOTO_JPEG = "photo_600x400.jpg";
+    // 限速时每次写出后休眠的间隔
+    private static final long THROTTLE_TICK_MILLIS = 50;
+    // id 从这里开始编号，与录制样本的量级一致
+    private static final long FIRST_ID = 180000000L;
+
+    /**
+     * 服务器的行为参数
+     */
+    public static class Config {
+        // 每个响应的基础延迟与其上均匀分布的抖动
+        long mLatencyMillis = 50;
+        long mJitterMillis = 20;
+        // 以这个概率额外增加mTailMillis 的延迟，模拟CDN 的长尾
+        double mTailRate = 0.02;
+        long mTailMillis = 1000;
+        // 每个响应的带宽上限，0 表示不限
+        long mBytesPerSecond;
+        // 以这个概率返回503
+        double mErrorRate;
+        // 每个查询的总页数，超出后返回空列表
+        int mPageCount = 20;
+        long mSeed = 1;
+
+        static Config from(Options options) {
+            Config config = new Config();
+            config.mLatencyMillis = options.getLong("latency", config.mLatencyMillis);
+            config.mJitterMillis = options.getLong("jitter", config.mJitterMillis);
+            config.mTailRate = options.getDouble("tail-rate", config.mTailRate);
+            config.mTailMillis = options.getLong("tail-latency", config.mTailMillis);
+            config.mBytesPerSecond = options.getLong("bandwidth", config.mBytesPerSecond);
+            config.mErrorRate = options.getDouble("error-rate", config.mErrorRate);
+            config.mPageCount = options.getInt("pages", config.mPageCount);
+            config.mSeed = options.getLong("seed", config.mSeed);
+            return config;
+        }
+
+        @Override
+        public String toString() {
+            return "latency=" + mLatencyMillis + "ms+" + mJitterMillis + "ms"
+                    + " tail=" + mTailRate + "@" + mTailMillis + "ms"
+                    + " bandwidth=" + (mBytesPerSecond == 0 ? "unlimited" : mBytesPerSecond + "B/s")
+                    + " errors=" + mErrorRate + " pages=" + mPageCount + " seed=" + mSeed;
+        }
+    }
+
+    private final Config mConfig;
+    private final Random mRandom;
+    // 录制的照片，每次使用时重新解析出一份可修改的副本
+    private final List<String> mPhotoTemplates = new ArrayList<>();
+    private final byte[] mJpeg;
+    // 按尺寸编号缓存缩放后的JPEG
+    private final ConcurrentMap<Integer, byte[]> mImages = new ConcurrentHashMap<>();
+    private final AtomicLong mRequestCount = new AtomicLong();
+    private final AtomicLong mErrorCount = new AtomicLong();
+    private final AtomicLong mBytesSent = new AtomicLong();
+
+    private HttpServer mServer;
+    private ExecutorService mExecutor;
+
+    public MockPhotoServer(Config config) throws IOException {
+        mConfig = config;
+        mRandom = new Random(config.mSeed);
+        JsonObject recorded = new JsonParser()
+                .parse(new String(Resources.read(PHOTOS_JSON), "UTF-8")).getAsJsonObject();
+        for (JsonElement photo : recorded.getAsJsonArray("photos")) {
+            mPhotoTemplates.add(photo.toString());
+        }
+        mJpeg = Resources.read(PHOTO_JPEG);
+    }
+
+    /**
+     * @param port 0 表示任选一个空闲端口
+     */
+    public void start(int port) throws IOException {
+        mServer = HttpServer.create(new InetSocketAddress(port), 0);
+        mServer.createContext(API_PREFIX, new ApiHandler());
+        mServer.createContext(IMAGE_PREFIX, new ImageHandler());
+        // 延迟在处理线程中休眠，每个连接一个线程，互不阻塞
+        mExecutor = Executors.newCachedThreadPool();
+        mServer.setExecutor(mExecutor);
+        mServer.start();
+    }
+
+    public void stop() {
+        mServer.stop(0);
+        mExecutor.shutdownNow();
+    }
+
+    /**
+     * @return 交给{@link info.kite.lost.android.photogallery.net.PhotoUrls#setEndpoint(String)} 的根地址
+     */
+    public String getEndpoint() {
+        return "http://127.0.0.1:" + mServer.getAddress().getPort() + API_PREFIX;
+    }
+
+    public long getRequestCount() {
+        return mRequestCount.get();
+    }
+
+    public long getErrorCount() {
+        return mErrorCount.get();
+    }
+
+    public long getBytesSent() {
+        return mBytesSent.get();
+    }
+
+    private String imageBase() {
+        return "http://127.0.0.1:" + mServer.getAddress().getPort() + IMAGE_PREFIX;
+    }
+
+    private class ApiHandler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            try {
+                if (injectFault(exchange)) {
+                    return;
+                }
+                String path = exchange.getRequestURI().getPath().substring(API_PREFIX.length());
+                Query query = new Query(exchange.getRequestURI().getRawQuery());
+                JsonObject body;
+                if (path.equals("/photos")) {
+                    body = page(0, query);
+                } else if (path.equals("/photos/search")) {
+                    // 不同关键词得到不同的id 区间
+                    String term = query.get("term");
+                    body = page(term == null ? 0 : (term.hashCode() & 0xffff) + 1, query);
+                } else if (path.startsWith("/photos/")) {
+                    long id = Long.parseLong(path.substring("/photos/".length()));
+                    body = new JsonObject();
+                    body.add("photo", photo(id, (int) (id % mPhotoTemplates.size()), query.mSizes));
+                } else {
+                    send(exchange, 404, "text/plain", new byte[0]);
+                    return;
+                }
+                send(exchange, 200, "application/json", body.toString().getBytes("UTF-8"));
+            } catch (NumberFormatException e) {
+                send(exchange, 400, "text/plain", new byte[0]);
+            } finally {
+                exchange.close();
+            }
+        }
+    }
+
+    private class ImageHandler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            try {
+                if (injectFault(exchange)) {
+                    return;
+                }
+                // /images/{id}/{size}.jpg
+                String path = exchange.getRequestURI().getPath();
+                String name = path.substring(path.lastIndexOf('/') + 1);
+                int size = Integer.parseInt(name.substring(0, name.indexOf('.')));
+                send(exchange, 200, "image/jpeg", image(size));
+            } catch (NumberFormatException | IndexOutOfBoundsException e) {
+                send(exchange, 400, "text/plain", new byte[0]);
+            } finally {
+                exchange.close();
+            }
+        }
+    }
+
+    /**
+     * 计数并按配置休眠，需要返回错误时直接写出503
+     *
+     * @return true 表示已经以错误结束
+     */
+    private boolean injectFault(HttpExchange exchange) throws IOException {
+        mRequestCount.incrementAndGet();
+        long delay;
+        boolean fail;
+        synchronized (mRandom) {
+            delay = mConfig.mLatencyMillis
+                    + (mConfig.mJitterMillis > 0 ? (long) (mRandom.nextDouble() * mConfig.mJitterMillis) : 0);
+            if (mRandom.nextDouble() < mConfig.mTailRate) {
+                delay += mConfig.mTailMillis;
+            }
+            fail = mRandom.nextDouble() < mConfig.mErrorRate;
+        }
+        sleep(delay);
+        if (fail) {
+            mErrorCount.incrementAndGet();
+            send(exchange, 503, "text/plain", new byte[0]);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * 生成一页照片，页码超出配置的总页数时返回空列表
+     *
+     * @param range 区分不同查询的id 区间
+     */
+    private JsonObject page(int range, Query query) {
+        int page = query.getInt("page", 1);
+        int rpp = query.getInt("rpp", 20);
+        JsonArray photos = new JsonArray();
+        if (page >= 1 && page <= mConfig.mPageCount) {
+            for (int i = 0; i < rpp; i++) {
+                long id = FIRST_ID + (long) range * mConfig.mPageCount * rpp + (long) (page - 1) * rpp + i;
+                photos.add(photo(id, i % mPhotoTemplates.size(), query.mSizes));
+            }
+        }
+        JsonObject body = new JsonObject();
+        body.addProperty("current_page", page);
+        body.addProperty("total_pages", mConfig.mPageCount);
+        body.addProperty("total_items", mConfig.mPageCount * rpp);
+        body.add("photos", photos);
+        return body;
+    }
+
+    /**
+     * 以录制的照片为模板，替换id 与各档位的图片地址
+     */
+    private JsonObject photo(long id, int template, List<Integer> sizes) {
+        JsonObject photo = new JsonParser().parse(mPhotoTemplates.get(template)).getAsJsonObject();
+        photo.addProperty("id", id);
+        JsonArray imageUrls = new JsonArray();
+        JsonArray images = new JsonArray();
+        for (int size : sizes) {
+            String url = imageBase() + id + "/" + size + ".jpg";
+            imageUrls.add(url);
+            JsonObject image = new JsonObject();
+            image.addProperty("size", size);
+            image.addProperty("url", url);
+            // 替身服务器只有http，https_url 与url 相同
+            image.addProperty("https_url", url);
+            image.addProperty("format", "jpeg");
+            images.add(image);
+        }
+        photo.add("image_url", imageUrls.size() == 1 ? imageUrls.get(0) : imageUrls);
+        photo.add("images", images);
+        return photo;
+    }
+
+    /**
+     * @return 长边缩放到该档位像素数的JPEG，未知的尺寸编号返回原样本
+     */
+    private byte[] image(int size) throws IOException {
+        byte[] cached = mImages.get(size);
+        if (cached != null) {
+            return cached;
+        }
+        ImageTier tier = ImageTier.fromSizeCode(size);
+        byte[] bytes = tier == null ? mJpeg : scale(mJpeg, tier.getPixels());
+        mImages.putIfAbsent(size, bytes);
+        return bytes;
+    }
+
+    private static byte[] scale(byte[] jpeg, int longEdge) throws IOException {
+        BufferedImage source = ImageIO.read(new ByteArrayInputStream(jpeg));
+        float factor = longEdge / (float) Math.max(source.getWidth(), source.getHeight());
+        int width = Math.max(1, Math.round(source.getWidth() * factor));
+        int height = Math.max(1, Math.round(source.getHeight() * factor));
+        BufferedImage scaled = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = scaled.createGraphics();
+        graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+                RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        graphics.drawImage(source, 0, 0, width, height, null);
+        graphics.dispose();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(scaled, "jpeg", out);
+        return out.toByteArray();
+    }
+
+    /**
+     * 写出响应，配置了带宽时按固定间隔分块写出
+     */
+    private void send(HttpExchange exchange, int status, String contentType, byte[] body)
+            throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(status, body.length == 0 ? -1 : body.length);
+        if (body.length == 0) {
+            return;
+        }
+        OutputStream out = exchange.getResponseBody();
+        long chunk = mConfig.mBytesPerSecond * THROTTLE_TICK_MILLIS / 1000;
+        if (chunk <= 0) {
+            out.write(body);
+        } else {
+            for (int offset = 0; offset < body.length; offset += chunk) {
+                int length = (int) Math.min(chunk, body.length - offset);
+                out.write(body, offset, length);
+                out.flush();
+                if (offset + length < body.length) {
+                    sleep(THROTTLE_TICK_MILLIS);
+                }
+            }
+        }
+        out.close();
+        mBytesSent.addAndGet(body.length);
+    }
+
+    private static void sleep(long millis) {
+        if (millis <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 请求参数，image_size[] 可以出现多次
+     */
+    private static class Query {
+        private final List<String> mNames = new ArrayList<>();
+        private final List<String> mValues = new ArrayList<>();
+        final List<Integer> mSizes = new ArrayList<>();
+
+        Query(String rawQuery) throws IOException {
+            if (rawQuery != null) {
+                for (String pair : rawQuery.split("&")) {
+                    int equals = pair.indexOf('=');
+                    if (equals < 0) {
+                        continue;
+                    }
+                    String name = URLDecoder.decode(pair.substring(0, equals), "UTF-8");
+                    String value = URLDecoder.decode(pair.substring(equals + 1), "UTF-8");
+                    mNames.add(name);
+                    mValues.add(value);
+                    if (name.equals("image_size") || name.equals("image_size[]")) {
+                        mSizes.add(Integer.parseInt(value));
+                    }
+                }
+            }
+            if (mSizes.isEmpty()) {
+                mSizes.add(ImageTier.SMALL.getSizeCode());
+            }
+        }
+
+        String get(String name) {
+            int index = mNames.indexOf(name);
+            return index < 0 ? null : mValues.get(index);
+        }
+
+        int getInt(String name, int defaultValue) {
+            String value = get(name);
+            return value == null ? defaultValue : Integer.parseInt(value);
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package info.kite.lost.android.photogallery.loadtest;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 命令行参数，形如 --name=value，只写 --name 时值为true
+ * <p/>
+ * Created on 2026/10/18.
+ */
+
+class Options {
+    private final Map<String, String> mValues = new HashMap<>();
+
+    static Options parse(String[] args) {
+        Options options = new Options();
+        for (String arg : args) {
+            if (!arg.startsWith("--")) {
+                throw new IllegalArgumentException("unexpected argument: " + arg);
+            }
+            int equals = arg.indexOf('=');
+            if (equals < 0) {
+                options.mValues.put(arg.substring(2), "true");
+            } else {
+                options.mValues.put(arg.substring(2, equals), arg.substring(equals + 1));
+            }
+        }
+        return options;
+    }
+
+    boolean has(String name) {
+        return mValues.containsKey(name);
+    }
+
+    String getString(String name, String defaultValue) {
+        String value = mValues.get(name);
+        return value == null ? defaultValue : value;
+    }
+
+    int getInt(String name, int defaultValue) {
+        String value = mValues.get(name);
+        return value == null ? defaultValue : Integer.parseInt(value);
+    }
+
+    long getLong(String name, long defaultValue) {
+        String value = mValues.get(name);
+        return value == null ? defaultValue : Long.parseLong(value);
+    }
+
+    double getDouble(String name, double defaultValue) {
+        String value = mValues.get(name);
+        return value == null ? defaultValue : Double.parseDouble(value);
+    }
+}
@@ -0,0 +1,74 @@
+package info.kite.lost.android.photogallery.loadtest;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import info.kite.lost.android.photogallery.model.GalleryItem;
+import info.kite.lost.android.photogallery.net.Deadline;
+import info.kite.lost.android.photogallery.net.GalleryItemParser;
+import info.kite.lost.android.photogallery.net.PhotoUrls;
+import info.kite.lost.android.photogallery.storage.SeenIdSet;
+
+/**
+ * 后台轮询：与PhotoPoller 相同，只取最前面的几张照片，用{@link SeenIdSet} 判断有没有新照片，
+ * 有新照片时再同步下载最新一张的缩略图作为通知的大图标
+ * 替身服务器的内容不会变化，依次请求后面的页来模拟两次轮询之间出现的新照片
+ * <p/>
+ * Created on 2026/10/18.
+ */
+
+class PollScenario implements Scenario {
+    // 与PhotoPoller 一致
+    private static final int POLL_ID_COUNT = 5;
+    private static final int SEEN_IDS_CAPACITY = 1024;
+    private static final long LIST_DEADLINE_MILLIS = 20 * 1000;
+    // 与ImageLoader.loadBlocking 的截止时间一致
+    private static final long ICON_DEADLINE_MILLIS = 10 * 1000;
+
+    private final int mPolls;
+    private final int mPageCount;
+
+    PollScenario(int polls, int pageCount) {
+        mPolls = polls;
+        mPageCount = pageCount;
+    }
+
+    @Override
+    public String getName() {
+        return "poll";
+    }
+
+    @Override
+    public void run(LoadClient client, ScenarioResult result) throws Exception {
+        SeenIdSet seenIds = new SeenIdSet(SEEN_IDS_CAPACITY);
+        for (int poll = 0; poll < mPolls; poll++) {
+            long start = System.nanoTime();
+            List<GalleryItem> items = new ArrayList<>();
+            try {
+                byte[] body = client.get(PhotoUrls.popular(poll % mPageCount + 1, POLL_ID_COUNT),
+                        Deadline.after(LIST_DEADLINE_MILLIS));
+                new GalleryItemParser().parse(new ByteArrayInputStream(body), items);
+            } catch (Exception e) {
+                result.counter("poll_errors").incrementAndGet();
+                continue;
+            }
+            int newCount = 0;
+            for (GalleryItem item : items) {
+                if (seenIds.add(SeenIdSet.keyOf(item.getId()))) {
+                    newCount++;
+                }
+            }
+            // 第一次轮询只记录基线
+            if (poll > 0 && newCount > 0) {
+                result.counter("new_photos").addAndGet(newCount);
+                try {
+                    client.get(items.get(0).getUrl(), Deadline.after(ICON_DEADLINE_MILLIS));
+                } catch (Exception e) {
+                    result.counter("icon_errors").incrementAndGet();
+                }
+            }
+            result.latency("poll").record(System.nanoTime() - start);
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package info.kite.lost.android.photogallery.loadtest;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import info.kite.lost.android.photogallery.net.ByteStreams;
+
+/**
+ * 读取classpath 中录制的样本，与core 的单元测试共用src/test/resources
+ * <p/>
+ * Created on 2026/10/18.
+ */
+
+class Resources {
+
+    private Resources() {
+    }
+
+    static byte[] read(String name) throws IOException {
+        InputStream in = Resources.class.getClassLoader().getResourceAsStream(name);
+        if (in == null) {
+            throw new IOException("missing resource: " + name);
+        }
+        try {
+            return ByteStreams.readFully(in, -1);
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package info.kite.lost.android.photogallery.loadtest;
+
+/**
+ * 模拟app 中的一条网络路径，通过{@link LoadClient} 访问服务器并把测量结果写入{@link ScenarioResult}
+ * <p/>
+ * Created on 2026/10/18.
+ */
+
+interface Scenario {
+
+    String getName();
+
+    void run(LoadClient client, ScenarioResult result) throws Exception;
+}
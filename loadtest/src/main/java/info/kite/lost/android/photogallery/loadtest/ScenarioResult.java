@@ -0,0 +1,125 @@
+package info.kite.lost.android.photogallery.loadtest;
+
+import java.io.PrintStream;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import info.kite.lost.android.photogallery.metrics.Histogram;
+
+/**
+ * 一个场景的测量结果：按名称区分的耗时分布（纳秒）、计数，以及客户端的请求统计
+ * <p/>
+ * Created on 2026/10/18.
+ */
+
+class ScenarioResult {
+    private static final double NANOS_PER_MILLI = 1000000.0;
+
+    private final String mName;
+    private final Map<String, Histogram> mLatencies = new LinkedHashMap<>();
+    private final Map<String, AtomicLong> mCounters = new LinkedHashMap<>();
+    private long mStartNanos;
+    private long mElapsedNanos;
+    private long mRequests;
+    private long mRetries;
+    private long mFailures;
+    private long mBytes;
+
+    ScenarioResult(String name) {
+        mName = name;
+    }
+
+    String getName() {
+        return mName;
+    }
+
+    synchronized Histogram latency(String name) {
+        Histogram histogram = mLatencies.get(name);
+        if (histogram == null) {
+            histogram = new Histogram();
+            mLatencies.put(name, histogram);
+        }
+        return histogram;
+    }
+
+    synchronized AtomicLong counter(String name) {
+        AtomicLong counter = mCounters.get(name);
+        if (counter == null) {
+            counter = new AtomicLong();
+            mCounters.put(name, counter);
+        }
+        return counter;
+    }
+
+    void start() {
+        mStartNanos = System.nanoTime();
+    }
+
+    /**
+     * 结束计时并记下客户端在这个场景中的请求统计
+     */
+    void finish(LoadClient client) {
+        mElapsedNanos = System.nanoTime() - mStartNanos;
+        mRequests = client.getRequests();
+        mRetries = client.getRetries();
+        mFailures = client.getFailures();
+        mBytes = client.getBytes();
+    }
+
+    double getSeconds() {
+        return mElapsedNanos / (NANOS_PER_MILLI * 1000);
+    }
+
+    void print(PrintStream out) {
+        out.println(String.format(Locale.US, "== %s: %.2fs, %d requests (%.1f/s), %d retries,"
+                        + " %d failures, %.2f MB received ==",
+                mName, getSeconds(), mRequests, mRequests / getSeconds(), mRetries, mFailures,
+                mBytes / (1024.0 * 1024)));
+        out.println("metric           count     p50ms     p95ms     p99ms     maxms");
+        for (Map.Entry<String, Histogram> entry : mLatencies.entrySet()) {
+            Histogram histogram = entry.getValue();
+            out.println(String.format(Locale.US, "%-12s %9d %9.1f %9.1f %9.1f %9.1f",
+                    entry.getKey(), histogram.getCount(),
+                    histogram.getPercentile(50) / NANOS_PER_MILLI,
+                    histogram.getPercentile(95) / NANOS_PER_MILLI,
+                    histogram.getPercentile(99) / NANOS_PER_MILLI,
+                    histogram.getMax() / NANOS_PER_MILLI));
+        }
+        for (Map.Entry<String, AtomicLong> entry : mCounters.entrySet()) {
+            out.println(entry.getKey() + "=" + entry.getValue().get());
+        }
+    }
+
+    /**
+     * @return 便于保存和比较的结构，由调用者序列化为JSON
+     */
+    Map<String, Object> toMap() {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("scenario", mName);
+        map.put("seconds", getSeconds());
+        map.put("requests", mRequests);
+        map.put("retries", mRetries);
+        map.put("failures", mFailures);
+        map.put("bytes", mBytes);
+        Map<String, Object> latencies = new LinkedHashMap<>();
+        for (Map.Entry<String, Histogram> entry : mLatencies.entrySet()) {
+            Histogram histogram = entry.getValue();
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("count", histogram.getCount());
+            stats.put("p50ms", histogram.getPercentile(50) / NANOS_PER_MILLI);
+            stats.put("p95ms", histogram.getPercentile(95) / NANOS_PER_MILLI);
+            stats.put("p99ms", histogram.getPercentile(99) / NANOS_PER_MILLI);
+            stats.put("maxms", histogram.getMax() / NANOS_PER_MILLI);
+            latencies.put(entry.getKey(), stats);
+        }
+        map.put("latencies", latencies);
+        Map<String, Object> counters = new LinkedHashMap<>();
+        for (Map.Entry<String, AtomicLong> entry : mCounters.entrySet()) {
+            counters.put(entry.getKey(), entry.getValue().get());
+        }
+        map.put("counters", counters);
+        return map;
+    }
+}
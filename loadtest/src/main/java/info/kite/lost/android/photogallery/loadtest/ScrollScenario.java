@@ -0,0 +1,161 @@
+package info.kite.lost.android.photogallery.loadtest;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import info.kite.lost.android.photogallery.cache.DiskCache;
+import info.kite.lost.android.photogallery.model.GalleryItem;
+import info.kite.lost.android.photogallery.model.ImageTier;
+import info.kite.lost.android.photogallery.net.Deadline;
+import info.kite.lost.android.photogallery.net.GalleryItemParser;
+import info.kite.lost.android.photogallery.net.LifoBlockingDeque;
+import info.kite.lost.android.photogallery.net.PhotoUrls;
+
+/**
+ * 滑动网格：逐页加载列表，每页的缩略图交给与ThumbnailDownloader 相同的后进先出网络线程池，
+ * 先查磁盘缓存再访问网络，与app 一样把响应直接流式写入磁盘缓存；翻页之间按设定的间隔停顿，模拟用户的滑动速度
+ * 第二遍起从头再滑一次，衡量磁盘缓存命中后的表现
+ * 列表页失败时与画廊一样停在这一页，下次翻页时再请求；连续失败若干次后放弃这一遍，计入pages_skipped
+ * 缩略图的耗时从提交开始计算，包含排队，即用户看到占位图的时间
+ * <p/>
+ * Created on 2026/10/18.
+ */
+
+class ScrollScenario implements Scenario {
+    private static final int PAGE_SIZE = 30;
+    // 与ThumbnailDownloader 的默认值一致
+    private static final int NETWORK_THREADS = 4;
+    private static final long PAGE_DEADLINE_MILLIS = 20 * 1000;
+    private static final long FETCH_DEADLINE_MILLIS = 15 * 1000;
+    private static final long DISK_CACHE_SIZE = 50 * 1024 * 1024;
+    // 同一页连续失败这么多次后结束这一遍，服务器不可用时不会无限循环
+    private static final int MAX_PAGE_ERRORS = 3;
+
+    private final int mPasses;
+    private final long mPageIntervalMillis;
+    private final ImageTier mTier;
+
+    ScrollScenario(int passes, long pageIntervalMillis, ImageTier tier) {
+        mPasses = passes;
+        mPageIntervalMillis = pageIntervalMillis;
+        mTier = tier;
+    }
+
+    @Override
+    public String getName() {
+        return "scroll";
+    }
+
+    @Override
+    public void run(LoadClient client, ScenarioResult result) throws Exception {
+        File dir = File.createTempFile("loadtest", "cache");
+        dir.delete();
+        DiskCache diskCache = new DiskCache(dir, DISK_CACHE_SIZE);
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(NETWORK_THREADS, NETWORK_THREADS,
+                0, TimeUnit.SECONDS, new LifoBlockingDeque<Runnable>());
+        try {
+            for (int pass = 0; pass < mPasses; pass++) {
+                scroll(client, result, diskCache, executor);
+            }
+            // 等待最后一页的缩略图
+            executor.shutdown();
+            executor.awaitTermination(1, TimeUnit.HOURS);
+        } finally {
+            executor.shutdownNow();
+            deleteRecursively(dir);
+        }
+    }
+
+    private void scroll(LoadClient client, ScenarioResult result, DiskCache diskCache,
+                        ThreadPoolExecutor executor) throws InterruptedException {
+        int errors = 0;
+        for (int page = 1; ; page++) {
+            long start = System.nanoTime();
+            List<GalleryItem> items = new ArrayList<>();
+            try {
+                byte[] body = client.get(PhotoUrls.popular(page, PAGE_SIZE),
+                        Deadline.after(PAGE_DEADLINE_MILLIS));
+                new GalleryItemParser().parse(new ByteArrayInputStream(body), items);
+            } catch (Exception e) {
+                result.counter("page_errors").incrementAndGet();
+                if (++errors >= MAX_PAGE_ERRORS) {
+                    result.counter("pages_skipped").incrementAndGet();
+                    return;
+                }
+                // 下次翻页时重新请求同一页
+                page--;
+                Thread.sleep(mPageIntervalMillis);
+                continue;
+            }
+            errors = 0;
+            result.latency("page").record(System.nanoTime() - start);
+            if (items.isEmpty()) {
+                return;
+            }
+            for (GalleryItem item : items) {
+                executor.execute(new ThumbnailTask(client, result, diskCache, item.getUrl(mTier)));
+            }
+            Thread.sleep(mPageIntervalMillis);
+        }
+    }
+
+    private static class ThumbnailTask implements Runnable {
+        private final LoadClient mClient;
+        private final ScenarioResult mResult;
+        private final DiskCache mDiskCache;
+        private final String mUrl;
+        private final long mSubmitNanos = System.nanoTime();
+
+        ThumbnailTask(LoadClient client, ScenarioResult result, DiskCache diskCache, String url) {
+            mClient = client;
+            mResult = result;
+            mDiskCache = diskCache;
+            mUrl = url;
+        }
+
+        @Override
+        public void run() {
+            mResult.latency("queue_wait").record(System.nanoTime() - mSubmitNanos);
+            if (mDiskCache.getFile(mUrl) != null) {
+                mResult.counter("disk_hits").incrementAndGet();
+            } else {
+                long start = System.nanoTime();
+                try {
+                    mClient.get(mUrl, Deadline.after(FETCH_DEADLINE_MILLIS),
+                            new LoadClient.BodyReader<File>() {
+                                @Override
+                                public File read(InputStream in, int contentLength)
+                                        throws IOException {
+                                    File file = mDiskCache.put(mUrl, in, contentLength);
+                                    if (file == null) {
+                                        throw new IOException("too large for disk cache: " + mUrl);
+                                    }
+                                    return file;
+                                }
+                            });
+                } catch (Exception e) {
+                    mResult.counter("thumbnail_errors").incrementAndGet();
+                    return;
+                }
+                mResult.latency("network").record(System.nanoTime() - start);
+            }
+            mResult.latency("thumbnail").record(System.nanoTime() - mSubmitNanos);
+        }
+    }
+
+    private static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        file.delete();
+    }
+}